@@ -0,0 +1,194 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * バッチ評価ハーネス
+ * 複数のテストケースを1つのJVM内でワーカースレッドに分けて Main.solve で解き、
+ * 出力をメモリ上のバッファのまま PaletteSimulator で採点する（プロセス起動・ファイル入出力なし）。
+ * 使い方: java BatchRunner [-dir tools/in] [-n 件数] [-threads 並列数] [-ms 1ケースの時間予算] [-warmup 件数] [-v]
+ *                         [-seeds 開始..終了] [--K k] [--T t] [--D d]
+ *  - -seeds を付けるとファイルを読まず、InputGenerator でシード[開始, 終了)のケースをメモリ上に生成する
+ *  - ケースごとのスコアと実行時間、合計・平均・パーセンタイルを標準出力に表示
+ *    （失敗したケースは統計から外し、errors と failed の行で別に示す）
+ *  - 解答側の System.err の出力は -v を付けない限り捨てる
+ */
+final class BatchRunner {
+
+    // 1ケースの結果
+    static final class Result {
+        final String name;
+        final long score;
+        final long nanos;
+        final String error;
+
+        Result(String name, long score, long nanos, String error) {
+            this.name = name;
+            this.score = score;
+            this.nanos = nanos;
+            this.error = error;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String dir = "tools/in";
+        int n = Integer.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long millis = TimeBudget.DEFAULT_LIMIT_MS;
+        int warmup = 2;
+        boolean verbose = false;
+        String seedRange = null;
+        Integer fixK = null, fixT = null, fixD = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-dir": dir = args[++i]; break;
+                case "-n": n = Integer.parseInt(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-ms": millis = Long.parseLong(args[++i]); break;
+                case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "-v": verbose = true; break;
+                case "-seeds": seedRange = args[++i]; break;
+                case "--K": fixK = Integer.parseInt(args[++i]); break;
+                case "--T": fixT = Integer.parseInt(args[++i]); break;
+                case "--D": fixD = Integer.parseInt(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (!verbose) System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<String> names = new ArrayList<>();
+        List<byte[]> inputs = new ArrayList<>();
+        if (seedRange != null) {
+            int sep = seedRange.indexOf("..");
+            long from = sep < 0 ? 0 : Long.parseLong(seedRange.substring(0, sep));
+            long to = Long.parseLong(sep < 0 ? seedRange : seedRange.substring(sep + 2));
+            for (long seed = from; seed < to && inputs.size() < n; seed++) {
+                names.add("seed" + seed);
+                inputs.add(InputGenerator.generate(seed, fixK, fixT, fixD));
+            }
+        } else {
+            for (Path p : listCases(Paths.get(dir), n)) {
+                names.add(p.getFileName().toString());
+                inputs.add(Files.readAllBytes(p));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("No cases in " + (seedRange != null ? "seeds " + seedRange : dir));
+            return;
+        }
+
+        // JIT のウォームアップ（集計には含めない）
+        for (int i = 0; i < Math.min(warmup, inputs.size()); i++) runCase(names.get(i), inputs.get(i), millis);
+
+        long wallStart = System.nanoTime();
+        Result[] results = run(names, inputs, threads, millis);
+        long wallNanos = System.nanoTime() - wallStart;
+
+        for (Result r : results) {
+            System.out.printf("%s %d %dms%s%n", r.name, r.score, r.nanos / 1_000_000,
+                    r.error == null ? "" : " " + r.error);
+        }
+        printSummary(results, threads, wallNanos);
+    }
+
+    // --- 全ケースをthreads本のワーカーで解く（結果は入力順）---
+    static Result[] run(List<String> names, List<byte[]> inputs, int threads, long millis) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                String name = names.get(i);
+                byte[] in = inputs.get(i);
+                futures.add(pool.submit(() -> runCase(name, in, millis)));
+            }
+            Result[] results = new Result[futures.size()];
+            for (int i = 0; i < results.length; i++) results[i] = futures.get(i).get();
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // --- 1ケース：メモリ上の入力を解き、出力をそのまま採点する ---
+    static Result runCase(String name, byte[] in, long millis) {
+        return runCase(name, in, millis, null);
+    }
+
+    // params が null ならケースの K / D に応じた既定の値（SolverParams.forCase）で解く
+    static Result runCase(String name, byte[] in, long millis, SolverParams params) {
+        long start = System.nanoTime();
+        try {
+            ProblemInput input = ProblemInput.parse(in);
+            OutputSink out = new OutputSink(1 << 16);
+            Main.solve(input, new TimeBudget(millis), out, SolverMetrics.disabled(),
+                    params != null ? params : SolverParams.forCase(input.K, input.D));
+            long nanos = System.nanoTime() - start;
+            try {
+                PaletteSimulator sim = PaletteSimulator.replay(input, out.toByteArray());
+                if (sim.delivered < input.H) return new Result(name, 0, nanos, "Not enough deliveries");
+                return new Result(name, sim.score(), nanos, null);
+            } catch (IllegalStateException e) {
+                return new Result(name, 0, nanos, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            return new Result(name, 0, System.nanoTime() - start, e.toString());
+        }
+    }
+
+    static List<Path> listCases(Path dir, int n) throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.toString().endsWith(".txt")).sorted().limit(n).collect(java.util.stream.Collectors.toList());
+        }
+    }
+
+    // 失敗したケース（例外・不正な出力）はスコアの統計に入れず、件数と名前を別に表示する
+    // （score=0 を混ぜると、小さいほど良いスコアの合計・平均が良く見えてしまう）
+    static void printSummary(Result[] results, int threads, long wallNanos) {
+        int m = results.length;
+        long[] scores = new long[m];
+        long[] nanos = new long[m];
+        long total = 0, totalNanos = 0;
+        int ok = 0;
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < m; i++) {
+            nanos[i] = results[i].nanos;
+            totalNanos += nanos[i];
+            if (results[i].error != null) {
+                failed.add(results[i].name);
+                continue;
+            }
+            scores[ok++] = results[i].score;
+            total += results[i].score;
+        }
+        scores = Arrays.copyOf(scores, ok);
+        Arrays.sort(scores);
+        Arrays.sort(nanos);
+        System.out.printf("cases=%d errors=%d total=%d mean=%.1f%n", m, failed.size(), total,
+                ok > 0 ? (double) total / ok : Double.NaN);
+        if (ok > 0) {
+            System.out.printf("score min=%d p10=%d p50=%d p90=%d p99=%d max=%d%n",
+                    scores[0], percentile(scores, 10), percentile(scores, 50), percentile(scores, 90),
+                    percentile(scores, 99), scores[ok - 1]);
+        }
+        if (!failed.isEmpty()) System.out.println("failed " + String.join(" ", failed));
+        System.out.printf("time mean=%.0fms p50=%dms p99=%dms max=%dms wall=%.1fs threads=%d%n",
+                totalNanos / 1e6 / m, percentile(nanos, 50) / 1_000_000, percentile(nanos, 99) / 1_000_000,
+                nanos[m - 1] / 1_000_000, wallNanos / 1e9, threads);
+    }
+
+    // 最近順位法のパーセンタイル（sortedは昇順）
+    static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,589 @@
+/**
+ * ターゲット列に対するビームサーチ
+ * パレット状態（WellGroups：色・グラム数・グループ構造＋ウェル使用回数）をプリミティブ配列のまま保持し、
+ * 上位B個の状態だけを残しながらH個のターゲットを順に処理する。
+ * 評価は実スコアと同じ尺度の 1e4 × 色差 + D × 廃棄量 に、次のような誘導項を同じ尺度で加えたもの。
+ *  - 注いだ絵の具はいずれ納品されれば無駄にならないため、注ぐたびにDを課すのではなく
+ *    「手持ち量 − 残りターゲット数」の超過分だけを確定した廃棄として課す（最終層で実スコアと一致）
+ *  - 直接納品には貪欲法と同じペナルティ（前回ウェル・使用回数）を課す
+ *  - 混合はグループを恒久的に1つ減らすため、一定の罰を課す（無いとパレットが1色に潰れる）
+ *  - 操作数は OpScheduler で配る：残りターゲットの予約を超える候補は出さず、余剰が足りなくなりそうなら
+ *    候補の操作数に値段を付ける（T に余裕があるケースでは0）
+ *  - 子状態は幅のPOOL_FACTOR倍まで生成し、次のLOOKAHEAD個のターゲットへの近さを加えて幅に絞る
+ *  - 展開する操作：0:そのまま納品, 1:追加注ぎ, 2:混合, 3:混合+追加注ぎ, 4:空きウェルへのレシピ注ぎ,
+ *    5:注ぎ足し（2〜3gの配合を格子から引いて一度に足す）, 6:廃棄＋追加注ぎ（一部または全部を捨てて比率を作り直す）,
+ *    7:分割（＋追加注ぎ）（混合した2ウェルの仕切りを戻し、半分ずつの2グループに戻す）
+ *  - 子状態は候補をスコアだけで選別してから、選ばれたものだけを copyFrom() で複写して生成する
+ *  - 各層の選択（親番号・操作）を記録し、最後に最良状態から経路を復元して OpPlan に書き込む
+ * ビーム幅は -Dbeam.width で固定でき（0で従来の貪欲法）、未指定なら時間予算（TimeBudget）に
+ * 収まる候補評価数から初期値を決める。
+ * 探索はターンごとに時間を実測し（adapt）、残り時間に合わせて幅・先読み数・列挙するチューブ数を
+ * 増減する。予算を使い切った後も幅1・先読みなしで最後まで進むため、必ず有効な解を出力する。
+ */
+final class BeamSearch {
+
+    static final int MAX_WIDTH = 64;
+    private static final long EVALS_PER_MILLI = 50000; // 1msあたりの候補評価数の目安
+    private static final int POOL_FACTOR = 4;          // 子状態は幅の何倍まで生成して先読みで絞るか
+    private static final int LOOKAHEAD = 2;            // 先読みするターゲット数（最大）
+    private static final double TIME_SAFETY = 0.9;     // 残り時間のうち探索に充てる割合
+    private static final int MAX_LEVEL = 3;            // 努力量の削減段階（0:全力 〜 3:幅1・先読みなし・チューブ半分）
+    private static final double ERROR_SCALE = 1e4;
+
+    private final int K, H, D, capacity, wellCount;
+    private final OpScheduler schedule; // 操作数の上限（予約）と、余剰が足りなくなりそうなときの1操作の値段
+    private final double prevPenalty, usedPenalty; // 直接納品のペナルティ（貪欲法と同じ）
+    private final double mergePenalty;             // 混合でグループが1つ減ることへの罰（色差単位）
+    private final double keptWaste;                // 手持ちに残す分の廃棄見込み（CostLedger.marginal）
+    private final double[] tubes, targets;
+    private final int[] wellX, wellY;
+    private final WellAdjacency adjacency;
+    private final MixtureLattice lattice;
+    private final int maxWidth;   // 配列を確保した幅の上限
+    private final int pool;       // 子状態の数の上限（maxWidth × POOL_FACTOR）
+    private final boolean fixedWidth;
+    private final TimeBudget budget;
+    private int width;            // 現在の幅（先読み評価で width 個に絞る）
+    private int level;            // 現在の削減段階
+    private int lookahead = LOOKAHEAD;
+    private int tubeLimit;        // 追加注ぎで列挙するチューブ数（ターゲットに近い順）
+    private final int[] tubeOrder;
+    private double nanosPerState = -1; // 1状態の展開にかかる時間（指数移動平均）
+
+    // 各層の選択履歴（[t*pool + i]）
+    private final int[] from, opType, opWell, opArg, opAux;
+
+    // 現在層・次層の状態
+    private WellGroups[] cur, nxt;
+    private double[] curCost, nxtCost; // 色差・ペナルティの累積（廃棄分は含まない）
+    private int[] curStock, nxtStock;  // パレット上の総グラム数
+    private int[] curOps, nxtOps;
+    private int[] curPrev, nxtPrev;
+    private int[] curUsed, nxtUsed; // [i*wellCount + w]
+    private int[] alive;          // 次に展開する状態（プール内の番号、評価順）
+    private int aliveCount;
+    private final double[] rank;
+    private final Integer[] order;
+
+    // 候補（コスト最大を先頭に持つ有界ヒープ）
+    private final double[] candCost;
+    private final int[] candParent, candType, candWell, candArg, candAux;
+    private int candSize;
+
+    private final int[] pairSeen;
+    private int pairStamp;
+    private final long[] offered = new long[8]; // 操作種別ごとの評価した候補数（計測用）
+    private SolverMetrics metrics = SolverMetrics.disabled();
+
+    BeamSearch(ProblemInput input, int[] wellX, int[] wellY, WellAdjacency adjacency, int capacity,
+               MixtureLattice lattice, OpScheduler schedule, int width, TimeBudget budget,
+               SolverParams params) {
+        this.K = input.K;
+        this.prevPenalty = params.prevPenalty();
+        this.usedPenalty = params.usedPenalty();
+        this.mergePenalty = params.mergePenalty();
+        this.keptWaste = params.keptWaste();
+        this.H = input.H;
+        this.D = input.D;
+        this.tubes = input.tubes;
+        this.targets = input.targets;
+        this.wellX = wellX;
+        this.wellY = wellY;
+        this.wellCount = wellX.length;
+        this.adjacency = adjacency;
+        this.capacity = capacity;
+        this.lattice = lattice;
+        this.schedule = schedule;
+        this.width = width;
+        this.budget = budget;
+        this.fixedWidth = System.getProperty("beam.width") != null;
+        // 固定幅なら縮めるだけ、そうでなければ初期値の2倍程度まで広げられるよう確保
+        this.maxWidth = fixedWidth ? width : Math.min(MAX_WIDTH, 2 * width + 2);
+        this.pool = maxWidth * POOL_FACTOR;
+        this.tubeLimit = K;
+        this.tubeOrder = new int[K];
+        for (int k = 0; k < K; k++) tubeOrder[k] = k;
+
+        from = new int[H * pool];
+        opType = new int[H * pool];
+        opWell = new int[H * pool];
+        opArg = new int[H * pool];
+        opAux = new int[H * pool];
+
+        cur = new WellGroups[pool];
+        nxt = new WellGroups[pool];
+        for (int i = 0; i < pool; i++) {
+            cur[i] = new WellGroups(wellCount);
+            nxt[i] = new WellGroups(wellCount);
+        }
+        curCost = new double[pool];
+        nxtCost = new double[pool];
+        curStock = new int[pool];
+        nxtStock = new int[pool];
+        curOps = new int[pool];
+        nxtOps = new int[pool];
+        curPrev = new int[pool];
+        nxtPrev = new int[pool];
+        curUsed = new int[pool * wellCount];
+        nxtUsed = new int[pool * wellCount];
+
+        candCost = new double[pool];
+        candParent = new int[pool];
+        candType = new int[pool];
+        candWell = new int[pool];
+        candArg = new int[pool];
+        candAux = new int[pool];
+        alive = new int[pool];
+        rank = new double[pool];
+        order = new Integer[pool];
+        pairSeen = new int[wellCount];
+    }
+
+    // --- 初期ビーム幅：指定があればそれを、なければ残り時間と1状態あたりの候補数から決める ---
+    static int chooseWidth(int K, int H, int wellCount, TimeBudget budget) {
+        String fixed = System.getProperty("beam.width");
+        if (fixed != null) return Math.max(0, Math.min(MAX_WIDTH, Integer.parseInt(fixed))); // 0なら貪欲法
+        long millis = (long) (budget.remainingMillis() * TIME_SAFETY);
+        // 1状態あたり：展開（納品・追加・混合(+追加)）＋子状態の先読み評価
+        long perState = (long) wellCount * (K + 1) * (3 + POOL_FACTOR * LOOKAHEAD);
+        long w = millis * EVALS_PER_MILLI / ((long) H * perState);
+        return (int) Math.max(1, Math.min(MAX_WIDTH, w));
+    }
+
+    // --- 初期状態からH個のターゲットを探索し、最良経路の評価値（実スコア＋ペナルティ）を返す ---
+    double run(WellGroups initial, SolverMetrics metrics) {
+        this.metrics = metrics;
+        cur[0].copyFrom(initial);
+        curCost[0] = 0.0;
+        curOps[0] = 0;
+        int stock = 0;
+        for (int w = 0; w < wellCount; w++) stock += (int) Math.round(initial.grams[w]);
+        curStock[0] = stock;
+        curPrev[0] = -1;
+        java.util.Arrays.fill(curUsed, 0, wellCount, 0);
+        alive[0] = 0;
+        aliveCount = 1;
+        budget.lap();
+
+        for (int t = 0; t < H; t++) {
+            candSize = 0;
+            int expanded = aliveCount;
+            if (tubeLimit < K) sortTubes(t);
+            // 残りターゲットに最低2操作ずつ残す
+            int opLimit = schedule.limit(t);
+            int remaining = H - t - 1;
+            for (int a = 0; a < aliveCount; a++) expand(alive[a], t, opLimit, remaining);
+            if (candSize == 0) throw new IllegalStateException("No feasible operation at turn " + t);
+
+            // 上位pool個の子状態を生成
+            for (int i = 0; i < candSize; i++) {
+                int p = candParent[i];
+                WellGroups g = nxt[i];
+                g.copyFrom(cur[p]);
+                System.arraycopy(curUsed, p * wellCount, nxtUsed, i * wellCount, wellCount);
+                // 使用回数・前回ウェルは貪欲法と同じく、納品元（混合は結合前の代表）に付ける
+                int usedWell = candType[i] >= 2 && candType[i] <= 3 ? g.find(candWell[i]) : candWell[i];
+                nxtPrev[i] = usedWell;
+                nxtUsed[i * wellCount + usedWell]++;
+                int pours = apply(g, t, candType[i], candWell[i], candArg[i], candAux[i]);
+                int discarded = candType[i] == 6 ? candAux[i] : 0;
+                nxtOps[i] = curOps[p] + pours + discarded + (candType[i] == 2 || candType[i] == 3 || candType[i] == 7 ? 2 : 1);
+                nxtStock[i] = curStock[p] + pours - discarded - 1;
+                nxtCost[i] = candCost[i] - waste(nxtStock[i], remaining);
+                rank[i] = candCost[i] + ERROR_SCALE * future(g, t);
+                order[i] = i;
+                int rec = t * pool + i;
+                from[rec] = p;
+                opType[rec] = candType[i];
+                opWell[rec] = candWell[i];
+                opArg[rec] = candArg[i];
+                opAux[rec] = candAux[i];
+            }
+
+            // 先読み込みの評価で width 個に絞る（同評価はプール番号順で決定的）
+            java.util.Arrays.sort(order, 0, candSize, (x, y) -> {
+                int c = Double.compare(rank[x], rank[y]);
+                return c != 0 ? c : Integer.compare(x, y);
+            });
+            aliveCount = Math.min(width, candSize);
+            for (int a = 0; a < aliveCount; a++) alive[a] = order[a];
+
+            WellGroups[] ts = cur; cur = nxt; nxt = ts;
+            double[] tc = curCost; curCost = nxtCost; nxtCost = tc;
+            int[] to = curOps; curOps = nxtOps; nxtOps = to;
+            to = curStock; curStock = nxtStock; nxtStock = to;
+            to = curPrev; curPrev = nxtPrev; nxtPrev = to;
+            to = curUsed; curUsed = nxtUsed; nxtUsed = to;
+
+            adapt(t, expanded);
+        }
+        for (int op = 0; op < offered.length; op++) metrics.evaluated(op, offered[op]);
+        return curCost[alive[0]] + waste(curStock[alive[0]], 0);
+    }
+
+    // --- ターン終了ごとの努力量調整 ---
+    // 1状態の展開時間を実測し、残りターゲットを予算内に収められる幅を求める。
+    // 幅1でも間に合わないときは段階的に先読み・チューブ列挙を削り、余裕が戻れば元に戻す。
+    private void adapt(int t, int expanded) {
+        long lap = budget.lap();
+        metrics.turnNanos(t, lap);
+        double perState = (double) lap / expanded;
+        nanosPerState = nanosPerState < 0 ? perState : 0.9 * nanosPerState + 0.1 * perState;
+        int remainingTargets = H - t - 1;
+        if (remainingTargets == 0) return;
+
+        if (budget.expired()) {
+            // 予算切れ：最小の努力量で最後まで進める
+            width = 1;
+            setLevel(MAX_LEVEL);
+            return;
+        }
+        double ideal = budget.slack(nanosPerState, remainingTargets) * TIME_SAFETY; // 賄える幅
+        if (ideal < 1.0) {
+            width = 1;
+            if (level < MAX_LEVEL) setLevel(level + 1);
+        } else if (level > 0) {
+            width = 1;
+            if (ideal >= 2.0) setLevel(level - 1);
+        } else if (ideal < width) {
+            width = Math.max(1, (int) ideal);
+        } else if (!fixedWidth && width < maxWidth && ideal >= width + 1) {
+            width++; // 広げるのは1ターンに1ずつ（計測の揺れ対策）
+        }
+    }
+
+    private void setLevel(int lv) {
+        level = lv;
+        lookahead = Math.max(0, LOOKAHEAD - lv);
+        tubeLimit = lv >= MAX_LEVEL ? Math.max(Math.min(K, 2), K / 2) : K;
+        if (tubeLimit == K) {
+            for (int k = 0; k < K; k++) tubeOrder[k] = k;
+        }
+    }
+
+    // 追加注ぎを絞るときは、ターゲットに近いチューブから列挙する
+    private void sortTubes(int t) {
+        double tr = targets[t * 3], tg = targets[t * 3 + 1], tb = targets[t * 3 + 2];
+        for (int i = 1; i < K; i++) {
+            int k = tubeOrder[i];
+            double dk = sq(tubes[k * 3] - tr, tubes[k * 3 + 1] - tg, tubes[k * 3 + 2] - tb);
+            int j = i;
+            while (j > 0) {
+                int q = tubeOrder[j - 1];
+                if (sq(tubes[q * 3] - tr, tubes[q * 3 + 1] - tg, tubes[q * 3 + 2] - tb) <= dk) break;
+                tubeOrder[j] = q;
+                j--;
+            }
+            tubeOrder[j] = k;
+        }
+    }
+
+    // 残りターゲットで使い切れない手持ち量（確定した廃棄）のコスト
+    private double waste(int stock, int remaining) {
+        return CostLedger.waste(D, stock, remaining);
+    }
+
+    // --- 次のlookahead個のターゲットに対し、そのまま納品か1g追加で届く最小色差の和 ---
+    private double future(WellGroups gs, int t) {
+        double sum = 0.0;
+        double[] colors = gs.colors, grams = gs.grams;
+        for (int j = t + 1; j <= t + lookahead && j < H; j++) {
+            double tr = targets[j * 3], tg = targets[j * 3 + 1], tb = targets[j * 3 + 2];
+            double best = Double.MAX_VALUE;
+            for (int g = 0; g < wellCount; g++) {
+                if (!gs.isRoot(g) || grams[g] < 1.0) continue;
+                double cr = colors[g * 3], cg = colors[g * 3 + 1], cb = colors[g * 3 + 2];
+                best = Math.min(best, sq(cr - tr, cg - tg, cb - tb));
+                if (grams[g] + 1.0 > capacity) continue;
+                double total = grams[g] + 1.0;
+                double sr = cr * grams[g], sg = cg * grams[g], sb = cb * grams[g];
+                for (int k = 0; k < K; k++) {
+                    best = Math.min(best, sq((sr + tubes[k * 3]) / total - tr,
+                            (sg + tubes[k * 3 + 1]) / total - tg, (sb + tubes[k * 3 + 2]) / total - tb));
+                }
+            }
+            if (best < Double.MAX_VALUE) sum += Math.sqrt(best);
+        }
+        return sum;
+    }
+
+    // --- 最良経路を復元して計画に書き込む（run() の後に呼ぶ）---
+    void export(OpPlan plan) {
+        int idx = alive[0];
+        for (int t = H - 1; t >= 0; t--) {
+            int rec = t * pool + idx;
+            plan.set(t, opType[rec], opWell[rec], opArg[rec], opAux[rec]);
+            idx = from[rec];
+        }
+    }
+
+    // --- 状態sの全候補を評価し、上位 width×POOL_FACTOR 個に入るものだけヒープへ ---
+    private void expand(int s, int t, int opLimit, int remaining) {
+        WellGroups gs = cur[s];
+        double base = curCost[s] + waste(curStock[s] - 1, remaining); // 注がない操作
+        double addBase = curCost[s] + waste(curStock[s], remaining);  // 1g注ぐ操作
+        double mixBase = base + ERROR_SCALE * mergePenalty;
+        double mixAddBase = addBase + ERROR_SCALE * mergePenalty;
+        int ops = curOps[s];
+        double opCost = ERROR_SCALE * schedule.price(t, ops); // 候補の操作数 × opCost を加える（余裕があれば0）
+        int prev = curPrev[s];
+        int usedBase = s * wellCount;
+        double[] colors = gs.colors, grams = gs.grams;
+        double tr = targets[t * 3], tg = targets[t * 3 + 1], tb = targets[t * 3 + 2];
+
+        for (int g = 0; g < wellCount; g++) {
+            if (!gs.isRoot(g) || grams[g] < 1.0) continue;
+            double cr = colors[g * 3], cg = colors[g * 3 + 1], cb = colors[g * 3 + 2];
+
+            // そのまま納品（ペナルティ最小のメンバーから）
+            if (ops + 1 <= opLimit) {
+                double penalty = Double.MAX_VALUE;
+                int member = g;
+                int m = g;
+                do {
+                    double p = (m == prev ? prevPenalty : 0.0) + usedPenalty * curUsed[usedBase + m];
+                    if (p < penalty || (p == penalty && m < member)) {
+                        penalty = p;
+                        member = m;
+                    }
+                    m = gs.next[m];
+                } while (m != g);
+                offer(base + ERROR_SCALE * penalty + opCost, sq(cr - tr, cg - tg, cb - tb), s, 0, member, -1, -1);
+            }
+
+            // 廃棄＋追加注ぎ：j g 捨ててから1g足す（1gの追加では比率が動かない多量のグループ向け）。
+            // 捨てた j g は後で注ぎ直す分として D × j を課す
+            if (level == 0) {
+                int held = (int) (grams[g] + 1e-9);
+                for (int j = 1; j <= held && ops + j + 2 <= opLimit; j++) {
+                    double keep = grams[g] - j, total = keep + 1.0;
+                    double dBase = curCost[s] + waste(curStock[s] - j, remaining) + (double) D * j + (j + 2) * opCost;
+                    for (int i = 0; i < tubeLimit; i++) {
+                        int k = tubeOrder[i];
+                        offer(dBase, sq((cr * keep + tubes[k * 3]) / total - tr, (cg * keep + tubes[k * 3 + 1]) / total - tg,
+                                (cb * keep + tubes[k * 3 + 2]) / total - tb), s, 6, g, k, j);
+                    }
+                }
+            }
+
+            // 分割：混合した2ウェルの仕切りを戻し、半分（面積比）ずつに分けてから片方で納品（＋追加注ぎ）。
+            // 混合の罰は差し戻さない（戻すと混合と分割を繰り返して操作を浪費した）
+            if (level == 0 && gs.splittable(g) && grams[g] >= 2.0 && ops + 2 <= opLimit) {
+                double half = grams[g] * 0.5;
+                offer(base + 2 * opCost, sq(cr - tr, cg - tg, cb - tb), s, 7, g, -1, gs.opened[g]);
+                if (half + 1.0 <= capacity && ops + 3 <= opLimit) {
+                    double hr = cr * half, hg = cg * half, hb = cb * half;
+                    for (int i = 0; i < tubeLimit; i++) {
+                        int k = tubeOrder[i];
+                        offer(addBase + 3 * opCost, sq((hr + tubes[k * 3]) / (half + 1.0) - tr, (hg + tubes[k * 3 + 1]) / (half + 1.0) - tg,
+                                (hb + tubes[k * 3 + 2]) / (half + 1.0) - tb), s, 7, g, k, gs.opened[g]);
+                    }
+                }
+            }
+
+            // 追加注ぎ
+            if (grams[g] + 1.0 > capacity || ops + 2 > opLimit) continue;
+            double total = grams[g] + 1.0;
+            double sr = cr * grams[g], sg = cg * grams[g], sb = cb * grams[g];
+            for (int i = 0; i < tubeLimit; i++) {
+                int k = tubeOrder[i];
+                double mr = (sr + tubes[k * 3]) / total;
+                double mg = (sg + tubes[k * 3 + 1]) / total;
+                double mb = (sb + tubes[k * 3 + 2]) / total;
+                offer(addBase + 2 * opCost, sq(mr - tr, mg - tg, mb - tb), s, 1, g, k, -1);
+            }
+
+            // 注ぎ足し（2g以上：グラム数ごとに比率表から最寄りの配合を1つ）
+            // 納品1gを超える n-1 g は手持ちを増やすので、レシピ注ぎ・貪欲法と同じく CostLedger.marginal を課す
+            if (level > 0) continue;
+            int room = Math.min((int) (capacity - grams[g] + 1e-9), MixtureLattice.TOP_UP_MAX_GRAMS);
+            for (int n = 2; n <= room && ops + n + 1 <= opLimit; n++) {
+                int e = lattice.topUp(grams[g], cr, cg, cb, tr, tg, tb, n);
+                if (e < 0) break;
+                double tot = grams[g] + n;
+                offer(base + CostLedger.marginal(D, curStock[s], remaining, n - 1, keptWaste) + (n + 1) * opCost,
+                        sq((sr + lattice.colors[e * 3] * n) / tot - tr, (sg + lattice.colors[e * 3 + 1] * n) / tot - tg,
+                                (sb + lattice.colors[e * 3 + 2] * n) / tot - tb), s, 5, g, e, -1);
+            }
+        }
+
+        // 混合・混合＋追加注ぎ（グループ対 g1 < g2 を1回だけ）
+        if (ops + 2 <= opLimit) {
+            for (int g1 = 0; g1 < wellCount; g1++) {
+                if (!gs.isRoot(g1) || grams[g1] < 1.0) continue;
+                pairStamp++;
+                int m = g1;
+                do {
+                    int[] nb = adjacency.neighbors[m];
+                    for (int n = 0; n < nb.length; n++) {
+                        int g2 = gs.find(nb[n]);
+                        if (g2 <= g1 || pairSeen[g2] == pairStamp) continue;
+                        pairSeen[g2] = pairStamp;
+                        if (grams[g2] < 1.0) continue;
+                        double total = grams[g1] + grams[g2];
+                        if (total > capacity) continue;
+                        double sr = colors[g1 * 3] * grams[g1] + colors[g2 * 3] * grams[g2];
+                        double sg = colors[g1 * 3 + 1] * grams[g1] + colors[g2 * 3 + 1] * grams[g2];
+                        double sb = colors[g1 * 3 + 2] * grams[g1] + colors[g2 * 3 + 2] * grams[g2];
+                        offer(mixBase + 2 * opCost, sq(sr / total - tr, sg / total - tg, sb / total - tb), s, 2, m, -1, n);
+
+                        if (total + 1.0 > capacity || ops + 3 > opLimit) continue;
+                        for (int i = 0; i < tubeLimit; i++) {
+                            int k = tubeOrder[i];
+                            double ar = (sr + tubes[k * 3]) / (total + 1.0);
+                            double ag = (sg + tubes[k * 3 + 1]) / (total + 1.0);
+                            double ab = (sb + tubes[k * 3 + 2]) / (total + 1.0);
+                            offer(mixAddBase + 3 * opCost, sq(ar - tr, ag - tg, ab - tb), s, 3, m, k, n);
+                        }
+                    }
+                    m = gs.next[m];
+                } while (m != g1);
+            }
+        }
+
+        // 空きウェルへの注ぎ込み（最初の空きグループのみ）
+        for (int g = 0; g < wellCount; g++) {
+            if (!gs.isRoot(g) || grams[g] >= 1e-8) continue;
+            if (ops + 2 <= opLimit) {
+                for (int k = 0; k < K; k++) {
+                    offer(addBase + 2 * opCost, sq(tubes[k * 3] - tr, tubes[k * 3 + 1] - tg, tubes[k * 3 + 2] - tb), s, 1, g, k, -1);
+                }
+            }
+            int e = lattice.nearest(tr, tg, tb);
+            if (lattice.grams[e] > 1 && ops + lattice.grams[e] + 1 <= opLimit) {
+                offer(base + CostLedger.marginal(D, curStock[s], remaining, lattice.grams[e] - 1, keptWaste) + (lattice.grams[e] + 1) * opCost,
+                        sq(lattice.colors[e * 3] - tr, lattice.colors[e * 3 + 1] - tg, lattice.colors[e * 3 + 2] - tb),
+                        s, 4, g, e, -1);
+            }
+            break;
+        }
+    }
+
+    // --- 候補をヒープへ（満杯なら最悪候補より良いときだけ入れ替え）---
+    private void offer(double base, double sqErr, int parent, int type, int well, int arg, int aux) {
+        offered[type]++;
+        int limit = width * POOL_FACTOR;
+        if (candSize == limit) {
+            double room = candCost[0] - base;
+            if (room <= 0) return;
+            double bound = room / ERROR_SCALE;
+            if (sqErr >= bound * bound) return;
+        }
+        double cost = base + ERROR_SCALE * Math.sqrt(sqErr);
+        int i;
+        if (candSize < limit) {
+            i = candSize++;
+            while (i > 0) {
+                int p = (i - 1) >> 1;
+                if (candCost[p] >= cost) break;
+                moveCand(p, i);
+                i = p;
+            }
+        } else {
+            if (cost >= candCost[0]) return;
+            i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= candSize) break;
+                if (c + 1 < candSize && candCost[c + 1] > candCost[c]) c++;
+                if (candCost[c] <= cost) break;
+                moveCand(c, i);
+                i = c;
+            }
+        }
+        candCost[i] = cost;
+        candParent[i] = parent;
+        candType[i] = type;
+        candWell[i] = well;
+        candArg[i] = arg;
+        candAux[i] = aux;
+    }
+
+    private void moveCand(int src, int dst) {
+        candCost[dst] = candCost[src];
+        candParent[dst] = candParent[src];
+        candType[dst] = candType[src];
+        candWell[dst] = candWell[src];
+        candArg[dst] = candArg[src];
+        candAux[dst] = candAux[src];
+    }
+
+    // --- 操作を状態に適用し、注いだグラム数を返す ---
+    private int apply(WellGroups gs, int t, int type, int well, int arg, int aux) {
+        if (type == 0) {
+            gs.take(gs.find(well));
+            return 0;
+        }
+        if (type == 1) {
+            int g = well; // 追加注ぎの対象は常に代表
+            double total = gs.grams[g] + 1.0;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * gs.grams[g] + tubes[arg * 3 + d]) / total;
+            }
+            gs.grams[g] = total;
+            gs.take(g);
+            return 1;
+        }
+        if (type == 6) {
+            int g = well;
+            double keep = gs.grams[g] - aux, total = keep + 1.0;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * keep + tubes[arg * 3 + d]) / total;
+            }
+            gs.grams[g] = total;
+            gs.take(g);
+            return 1;
+        }
+        if (type == 5) {
+            int g = well;
+            int n = lattice.grams[arg];
+            double total = gs.grams[g] + n;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * gs.grams[g] + lattice.colors[arg * 3 + d] * n) / total;
+            }
+            gs.grams[g] = total;
+            gs.take(g);
+            return n;
+        }
+        if (type == 7) {
+            gs.split(gs.find(well));
+            int g = well;
+            int pours = 0;
+            if (arg >= 0) {
+                double total = gs.grams[g] + 1.0;
+                for (int d = 0; d < 3; d++) {
+                    gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * gs.grams[g] + tubes[arg * 3 + d]) / total;
+                }
+                gs.grams[g] = total;
+                pours = 1;
+            }
+            gs.take(g);
+            return pours;
+        }
+        if (type == 4) {
+            int g = well;
+            int n = lattice.grams[arg];
+            for (int d = 0; d < 3; d++) gs.colors[g * 3 + d] = lattice.colors[arg * 3 + d];
+            gs.grams[g] = n;
+            gs.take(g);
+            return n;
+        }
+        // 混合（＋追加注ぎ）
+        int root = gs.union(well, adjacency.neighbors[well][aux], well << 8 | aux);
+        int pours = 0;
+        if (type == 3) {
+            double total = gs.grams[root] + 1.0;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[root * 3 + d] = (gs.colors[root * 3 + d] * gs.grams[root] + tubes[arg * 3 + d]) / total;
+            }
+            gs.grams[root] = total;
+            pours = 1;
+        }
+        gs.take(root);
+        return pours;
+    }
+
+    private static double sq(double a, double b, double c) {
+        return a * a + b * b + c * c;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * ターンをまたぐ候補色のキャッシュ（貪欲法用）
+ * 1ターンで色・量が変わるのは操作したグループだけなので、グループごとの候補色
+ * （追加注ぎK通り・隣接グループとの混合・混合＋追加注ぎK通り）を WellGroups.version で鍵付けして保持し、
+ * 版が変わったグループの分だけ計算し直す。以降のターンはターゲットとの距離を測り直すだけになる。
+ *  - addColor[(g*K + k)*3 + d]               : グループgにチューブkを1g足した色
+ *  - pairColor[slot*3 + d]           : グループ対(g1 < g2)を混ぜた色
+ *  - pairAddColor[(slot*K + k)*3 + d] : さらにチューブkを1g足した色（容量内のときだけ有効）
+ *    slot は対を見つけた隣接辺（メンバーmの n 番目の隣接ウェル）の通し番号で、
+ *    対の代表 (g1, g2) とそれぞれの版が一致するときだけ有効
+ * 色の計算式は従来の評価ループと同じなので、キャッシュの有無で結果は変わらない。
+ * 混合の並列評価では、隣接辺はg1のメンバーのものなので区間ごとに書き込む位置が分かれ、同期は不要。
+ */
+final class CandidateCache {
+
+    private final int K;
+    private final double[] tubes;
+
+    private final double[] addColor;
+    private final int[] addVersion;
+
+    private final int[] edgeBase; // メンバーmの隣接辺の通し番号の先頭
+    private final double[] pairColor;
+    private final double[] pairAddColor;
+    private final int[] pairRoot1, pairRoot2, pairVersion1, pairVersion2;
+
+    CandidateCache(int wellCount, double[] tubes, int K, WellAdjacency adjacency) {
+        this.K = K;
+        this.tubes = tubes;
+        addColor = new double[wellCount * K * 3];
+        addVersion = new int[wellCount];
+        java.util.Arrays.fill(addVersion, -1);
+        edgeBase = new int[wellCount];
+        int edges = 0;
+        for (int w = 0; w < wellCount; w++) {
+            edgeBase[w] = edges;
+            edges += adjacency.neighbors[w].length;
+        }
+        pairColor = new double[edges * 3];
+        pairAddColor = new double[edges * K * 3];
+        pairRoot1 = new int[edges];
+        pairRoot2 = new int[edges];
+        pairVersion1 = new int[edges];
+        pairVersion2 = new int[edges];
+        java.util.Arrays.fill(pairRoot1, -1);
+    }
+
+    // --- グループgの追加注ぎ色（先頭位置を返す：addColors()[返り値 + k*3 + d]）---
+    int addOffset(WellGroups gs, int g) {
+        int base = g * K * 3;
+        if (addVersion[g] == gs.version[g]) return base;
+        double grams = gs.grams[g];
+        double total = grams + 1.0;
+        double sr = gs.colors[g * 3] * grams, sg = gs.colors[g * 3 + 1] * grams, sb = gs.colors[g * 3 + 2] * grams;
+        for (int k = 0; k < K; k++) {
+            addColor[base + k * 3] = (sr + tubes[k * 3]) / total;
+            addColor[base + k * 3 + 1] = (sg + tubes[k * 3 + 1]) / total;
+            addColor[base + k * 3 + 2] = (sb + tubes[k * 3 + 2]) / total;
+        }
+        addVersion[g] = gs.version[g];
+        return base;
+    }
+
+    double[] addColors() {
+        return addColor;
+    }
+
+    // --- メンバーmのn番目の隣接辺で見つけたグループ対(g1 < g2)の混合色（pairColors()[返り値*3 + d]）---
+    // withAdd なら混合＋追加注ぎの色も用意する（pairAddColors()[(返り値*K + k)*3 + d]）
+    int pairSlot(WellGroups gs, int m, int n, int g1, int g2, boolean withAdd) {
+        int slot = edgeBase[m] + n;
+        if (pairRoot1[slot] == g1 && pairRoot2[slot] == g2
+                && pairVersion1[slot] == gs.version[g1] && pairVersion2[slot] == gs.version[g2]) return slot;
+        double grams1 = gs.grams[g1], grams2 = gs.grams[g2];
+        double total = grams1 + grams2;
+        double sr = gs.colors[g1 * 3] * grams1 + gs.colors[g2 * 3] * grams2;
+        double sg = gs.colors[g1 * 3 + 1] * grams1 + gs.colors[g2 * 3 + 1] * grams2;
+        double sb = gs.colors[g1 * 3 + 2] * grams1 + gs.colors[g2 * 3 + 2] * grams2;
+        double mr = sr / total, mg = sg / total, mb = sb / total;
+        pairColor[slot * 3] = mr;
+        pairColor[slot * 3 + 1] = mg;
+        pairColor[slot * 3 + 2] = mb;
+        if (withAdd) {
+            sr = mr * total; sg = mg * total; sb = mb * total;
+            int base = slot * K * 3;
+            for (int k = 0; k < K; k++) {
+                pairAddColor[base + k * 3] = (sr + tubes[k * 3]) / (total + 1.0);
+                pairAddColor[base + k * 3 + 1] = (sg + tubes[k * 3 + 1]) / (total + 1.0);
+                pairAddColor[base + k * 3 + 2] = (sb + tubes[k * 3 + 2]) / (total + 1.0);
+            }
+        }
+        pairRoot1[slot] = g1;
+        pairRoot2[slot] = g2;
+        pairVersion1[slot] = gs.version[g1];
+        pairVersion2[slot] = gs.version[g2];
+        return slot;
+    }
+
+    double[] pairColors() {
+        return pairColor;
+    }
+
+    double[] pairAddColors() {
+        return pairAddColor;
+    }
+}
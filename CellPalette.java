@@ -0,0 +1,239 @@
+/**
+ * マス単位のパレット（仕切りをビット列で持ち、連結成分を差分で更新する）
+ * 正方形ウェルの格子（PaletteLayout / WellGroups）と違い、任意の仕切りの状態を表せる。
+ *  - wallRight[i] の j ビット : (i,j)-(i,j+1) 間の仕切り
+ *  - wallDown[i]  の j ビット : (i,j)-(i+1,j) 間の仕切り（N ≦ 64 なので1行が long 1つに収まる）
+ *  - comp[i*N + j] : マスの連結成分の番号。番号は lib.rs の走査順とは限らない（空いた番号を使い回す）
+ *  - cap / vol / colors[id*3+d] : 成分ごとの容量（マス数）・量・色を番号で引く平坦な配列
+ * 仕切りの切り替えは全体を振り直さず、切り替えた辺のまわりだけを調べる。
+ *  - 外す：別の成分なら、小さい方の成分だけを大きい方の番号に塗り替える（量は和・色は重み付き平均）
+ *  - 立てる：同じ成分なら、両側から交互に幅優先で広げ、出会えば連結のまま何もしない。
+ *    先に探索が尽きた側（分かれた小さい方）だけを新しい番号にし、量を容量比で按分する（色はそのまま）
+ *  → 1回の切り替えは小さい側の成分の大きさに比例する（N=20 の2×2ウェルなら数マス分）
+ *    実測は KernelBench -only wallToggle（ns/toggle は計算機によって数倍違うので、同じ計算機での比較に使う）
+ * copyFrom() で System.arraycopy による複写ができる（状態はすべてプリミティブ配列）。
+ * 使うのは採点・検証の道具だけ（PaletteSimulator と、それを通す BatchRunner・SolverMetrics・PlanAnnealerCheck）。
+ * 解法（Main・BeamSearch・PlanAnnealer）は正方形ウェル単位の WellGroups で状態を持つ：レイアウトは2×2の格子に
+ * 固定で隣接表も変わらないので、マス単位の連結成分を持っても候補の評価は速くならない。
+ */
+final class CellPalette {
+
+    final int N;
+    final long[] wallRight;
+    final long[] wallDown;
+    final int[] comp;
+    final int[] cap;
+    final double[] vol;
+    final double[] colors;
+
+    private final int[] freeIds; // 未使用の成分番号（スタック）
+    private int freeCount;
+    private int count;           // 成分数
+
+    private final int[] mark;    // 探索の訪問印（stamp：c1側, stamp+1：c2側）
+    private int stamp;
+    private final int[] queueA, queueB;
+
+    // wallV[i*(N-1) + j] : (i,j)-(i,j+1) 間, wallH[i*N + j] : (i,j)-(i+1,j) 間（出力の仕切りと同じ並び）
+    CellPalette(int N, boolean[] wallV, boolean[] wallH) {
+        if (N < 1 || N > 64) throw new IllegalArgumentException("N out of range: " + N);
+        this.N = N;
+        wallRight = new long[N];
+        wallDown = new long[N];
+        comp = new int[N * N];
+        cap = new int[N * N];
+        vol = new double[N * N];
+        colors = new double[N * N * 3];
+        freeIds = new int[N * N];
+        mark = new int[N * N];
+        queueA = new int[N * N];
+        queueB = new int[N * N];
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j + 1 < N; j++) if (wallV[i * (N - 1) + j]) wallRight[i] |= 1L << j;
+        }
+        for (int i = 0; i + 1 < N; i++) {
+            for (int j = 0; j < N; j++) if (wallH[i * N + j]) wallDown[i] |= 1L << j;
+        }
+        labelAll();
+    }
+
+    // --- 別の状態を丸ごと複写（同じ N のもの）---
+    void copyFrom(CellPalette o) {
+        int n = N * N;
+        System.arraycopy(o.wallRight, 0, wallRight, 0, N);
+        System.arraycopy(o.wallDown, 0, wallDown, 0, N);
+        System.arraycopy(o.comp, 0, comp, 0, n);
+        System.arraycopy(o.cap, 0, cap, 0, n);
+        System.arraycopy(o.vol, 0, vol, 0, n);
+        System.arraycopy(o.colors, 0, colors, 0, n * 3);
+        System.arraycopy(o.freeIds, 0, freeIds, 0, n);
+        freeCount = o.freeCount;
+        count = o.count;
+    }
+
+    int componentCount() {
+        return count;
+    }
+
+    int componentOf(int i, int j) {
+        return comp[i * N + j];
+    }
+
+    boolean wallBetween(int i1, int j1, int i2, int j2) {
+        if (i1 == i2) return (wallRight[i1] >>> Math.min(j1, j2) & 1L) != 0;
+        return (wallDown[Math.min(i1, i2)] >>> j1 & 1L) != 0;
+    }
+
+    // --- 成分idにチューブkを1g注ぐ（あふれる分は入らず、容量ちょうどになる）---
+    void pour(int id, double[] tubes, int k) {
+        double v = vol[id], room = cap[id] - v;
+        double w = room <= 1.0 ? room : 1.0, sum = v + w;
+        for (int d = 0; d < 3; d++) {
+            colors[id * 3 + d] = sum <= 0.0 ? 0.0 : (v * colors[id * 3 + d] + w * tubes[k * 3 + d]) / sum;
+        }
+        vol[id] = room <= 1.0 ? cap[id] : sum;
+    }
+
+    // --- 1g取り出す（納品・廃棄）---
+    void take(int id) {
+        vol[id] = Math.max(vol[id] - 1.0, 0.0);
+    }
+
+    // --- 隣り合うマスの間の仕切りを切り替える（隣接していることは呼び出し側で確認する）---
+    // 連結関係が変わらなければ仕切りのビットだけを変える
+    void toggle(int i1, int j1, int i2, int j2) {
+        boolean closing = !wallBetween(i1, j1, i2, j2);
+        if (i1 == i2) wallRight[i1] ^= 1L << Math.min(j1, j2);
+        else wallDown[Math.min(i1, i2)] ^= 1L << j1;
+        int c1 = i1 * N + j1, c2 = i2 * N + j2;
+        if (closing) {
+            if (comp[c1] == comp[c2]) separate(c1, c2);
+        } else if (comp[c1] != comp[c2]) {
+            merge(c1, c2);
+        }
+    }
+
+    // --- 結合：小さい方の成分を塗り替えて大きい方に入れる ---
+    private void merge(int c1, int c2) {
+        int a = comp[c1], b = comp[c2], start = c2;
+        if (cap[a] < cap[b]) {
+            a = comp[c2];
+            b = comp[c1];
+            start = c1;
+        }
+        // 塗り替えは番号 b のマスだけをたどる（仕切りを見なくても成分の外には出ない）
+        relabel(start, b, a);
+        double v1 = vol[a], v2 = vol[b], sum = v1 + v2;
+        for (int d = 0; d < 3; d++) {
+            colors[a * 3 + d] = sum <= 0.0 ? 0.0 : (v1 * colors[a * 3 + d] + v2 * colors[b * 3 + d]) / sum;
+        }
+        vol[a] = sum;
+        cap[a] += cap[b];
+        release(b);
+    }
+
+    // --- 分割の判定：c1, c2 の両側から交互に広げる（出会えば連結のまま）---
+    private void separate(int c1, int c2) {
+        stamp += 2;
+        int sa = stamp, sb = stamp + 1;
+        int headA = 0, tailA = 0, headB = 0, tailB = 0;
+        queueA[tailA++] = c1;
+        mark[c1] = sa;
+        queueB[tailB++] = c2;
+        mark[c2] = sb;
+        while (headA < tailA && headB < tailB) {
+            tailA = step(queueA[headA++], queueA, tailA, sa, sb);
+            if (tailA < 0) return;
+            tailB = step(queueB[headB++], queueB, tailB, sb, sa);
+            if (tailB < 0) return;
+        }
+        // 尽きた側を最後まで確定させる（もう一方の探索中に尽きていれば全マスが queue に入っている）
+        boolean sideA = headA >= tailA;
+        int[] queue = sideA ? queueA : queueB;
+        int size = sideA ? tailA : tailB;
+        int old = comp[c1], id = acquire();
+        for (int q = 0; q < size; q++) comp[queue[q]] = id;
+        int total = cap[old];
+        double v = vol[old];
+        cap[id] = size;
+        cap[old] = total - size;
+        vol[id] = v * size / total;
+        vol[old] = v * (total - size) / total;
+        for (int d = 0; d < 3; d++) colors[id * 3 + d] = colors[old * 3 + d];
+    }
+
+    // マスcの開いた隣を印 own で queue に積む（相手の印 other に出会えば -1）
+    private int step(int c, int[] queue, int tail, int own, int other) {
+        int i = c / N, j = c % N;
+        long right = wallRight[i] >>> j, down = i + 1 < N ? wallDown[i] >>> j : 1L;
+        if (j + 1 < N && (right & 1L) == 0 && (tail = visit(c + 1, queue, tail, own, other)) < 0) return -1;
+        if ((down & 1L) == 0 && (tail = visit(c + N, queue, tail, own, other)) < 0) return -1;
+        if (j > 0 && (wallRight[i] >>> (j - 1) & 1L) == 0 && (tail = visit(c - 1, queue, tail, own, other)) < 0) return -1;
+        if (i > 0 && (wallDown[i - 1] >>> j & 1L) == 0 && (tail = visit(c - N, queue, tail, own, other)) < 0) return -1;
+        return tail;
+    }
+
+    private int visit(int n, int[] queue, int tail, int own, int other) {
+        int m = mark[n];
+        if (m == other) return -1;
+        if (m != own) {
+            mark[n] = own;
+            queue[tail++] = n;
+        }
+        return tail;
+    }
+
+    // 番号 from の成分（start を含む）を番号 to に塗り替える
+    private void relabel(int start, int from, int to) {
+        int[] stack = queueA;
+        int sp = 0;
+        stack[sp++] = start;
+        comp[start] = to;
+        while (sp > 0) {
+            int c = stack[--sp];
+            int i = c / N, j = c % N;
+            if (j + 1 < N && comp[c + 1] == from) { comp[c + 1] = to; stack[sp++] = c + 1; }
+            if (i + 1 < N && comp[c + N] == from) { comp[c + N] = to; stack[sp++] = c + N; }
+            if (j > 0 && comp[c - 1] == from) { comp[c - 1] = to; stack[sp++] = c - 1; }
+            if (i > 0 && comp[c - N] == from) { comp[c - N] = to; stack[sp++] = c - N; }
+        }
+    }
+
+    private int acquire() {
+        count++;
+        return freeIds[--freeCount];
+    }
+
+    private void release(int id) {
+        count--;
+        cap[id] = 0;
+        vol[id] = 0.0;
+        freeIds[freeCount++] = id;
+    }
+
+    // --- 初期の番号付け（全マスを一度だけ走査。番号は lib.rs の get_ids と同じ順）---
+    private void labelAll() {
+        java.util.Arrays.fill(comp, -1);
+        int id = 0;
+        for (int s = 0; s < N * N; s++) {
+            if (comp[s] != -1) continue;
+            int sp = 0;
+            queueA[sp++] = s;
+            comp[s] = id;
+            int size = 0;
+            while (sp > 0) {
+                int c = queueA[--sp];
+                int i = c / N, j = c % N;
+                size++;
+                if (j + 1 < N && (wallRight[i] >>> j & 1L) == 0 && comp[c + 1] == -1) { comp[c + 1] = id; queueA[sp++] = c + 1; }
+                if (i + 1 < N && (wallDown[i] >>> j & 1L) == 0 && comp[c + N] == -1) { comp[c + N] = id; queueA[sp++] = c + N; }
+                if (j > 0 && (wallRight[i] >>> (j - 1) & 1L) == 0 && comp[c - 1] == -1) { comp[c - 1] = id; queueA[sp++] = c - 1; }
+                if (i > 0 && (wallDown[i - 1] >>> j & 1L) == 0 && comp[c - N] == -1) { comp[c - N] = id; queueA[sp++] = c - N; }
+            }
+            cap[id++] = size;
+        }
+        count = id;
+        freeCount = 0;
+        for (int f = N * N - 1; f >= id; f--) freeIds[freeCount++] = f;
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * ChaCha20 乱数生成器（Rust の rand_chacha 0.3 / rand 0.8 と同じ出力列）
+ * 生成器（InputGenerator）がツールの gen.rs と同じケースを再現するために使う。
+ *  - seedFromU64 : rand_core の seed_from_u64（PCG32で32バイトの鍵を作る）と同じ
+ *  - 64bitブロックカウンタ・ストリーム0 の鍵ストリームを32bit語単位で順に返す
+ *  - nextU64 は連続する2語（下位→上位）
+ */
+final class ChaCha20Rng {
+
+    private final int[] key = new int[8];
+    private final int[] block = new int[16];
+    private final int[] work = new int[16];
+    private long counter;
+    private int index = 16;
+
+    private ChaCha20Rng() {
+    }
+
+    static ChaCha20Rng seedFromU64(long state) {
+        final long mul = 6364136223846793005L;
+        final long inc = 0xA17654E46FBE17F3L; // 11634580027462260723
+        ChaCha20Rng rng = new ChaCha20Rng();
+        for (int i = 0; i < 8; i++) {
+            state = state * mul + inc;
+            int xorshifted = (int) (((state >>> 18) ^ state) >>> 27);
+            int rot = (int) (state >>> 59);
+            rng.key[i] = Integer.rotateRight(xorshifted, rot);
+        }
+        return rng;
+    }
+
+    int nextU32() {
+        if (index == 16) refill();
+        return block[index++];
+    }
+
+    long nextU64() {
+        long lo = nextU32() & 0xFFFFFFFFL;
+        long hi = nextU32() & 0xFFFFFFFFL;
+        return hi << 32 | lo;
+    }
+
+    // --- rand の gen_range(low..=high)（i32、UniformInt::sample_single_inclusive）---
+    int nextIntInclusive(int low, int high) {
+        int range = high - low + 1;
+        if (range == 0) return nextU32();
+        int zone = (range << Integer.numberOfLeadingZeros(range)) - 1;
+        while (true) {
+            long m = (nextU32() & 0xFFFFFFFFL) * (range & 0xFFFFFFFFL);
+            int hi = (int) (m >>> 32);
+            int lo = (int) m;
+            if (Integer.compareUnsigned(lo, zone) <= 0) return low + hi;
+        }
+    }
+
+    // --- rand の gen_range(low..high)（f64、UniformFloat::sample_single）---
+    double nextDouble(double low, double high) {
+        double scale = high - low;
+        while (true) {
+            double value12 = Double.longBitsToDouble(1023L << 52 | (nextU64() >>> 12));
+            double res = (value12 - 1.0) * scale + low;
+            if (res < high) return res;
+            scale = Math.nextDown(scale);
+        }
+    }
+
+    // --- rand の gen::<f64>()（[0, 1)、上位53bit）---
+    double nextDouble() {
+        return (nextU64() >>> 11) * 0x1.0p-53;
+    }
+
+    private void refill() {
+        int[] s = work;
+        s[0] = 0x61707865; s[1] = 0x3320646e; s[2] = 0x79622d32; s[3] = 0x6b206574;
+        System.arraycopy(key, 0, s, 4, 8);
+        s[12] = (int) counter;
+        s[13] = (int) (counter >>> 32);
+        s[14] = 0;
+        s[15] = 0;
+        System.arraycopy(s, 0, block, 0, 16);
+        for (int r = 0; r < 10; r++) {
+            quarter(s, 0, 4, 8, 12);
+            quarter(s, 1, 5, 9, 13);
+            quarter(s, 2, 6, 10, 14);
+            quarter(s, 3, 7, 11, 15);
+            quarter(s, 0, 5, 10, 15);
+            quarter(s, 1, 6, 11, 12);
+            quarter(s, 2, 7, 8, 13);
+            quarter(s, 3, 4, 9, 14);
+        }
+        for (int i = 0; i < 16; i++) block[i] += s[i];
+        counter++;
+        index = 0;
+    }
+
+    private static void quarter(int[] s, int a, int b, int c, int d) {
+        s[a] += s[b]; s[d] = Integer.rotateLeft(s[d] ^ s[a], 16);
+        s[c] += s[d]; s[b] = Integer.rotateLeft(s[b] ^ s[c], 12);
+        s[a] += s[b]; s[d] = Integer.rotateLeft(s[d] ^ s[a], 8);
+        s[c] += s[d]; s[b] = Integer.rotateLeft(s[b] ^ s[c], 7);
+    }
+}
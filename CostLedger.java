@@ -0,0 +1,67 @@
+/**
+ * 絵の具の収支（スコアの D × 廃棄量 の項）
+ * スコア = 1 + D × (V − H) + round(1e4 × E) のうち、V − H は「注いだのに納品されなかった量」。
+ * 手持ち（全ウェルの量の和）が残りターゲット数を超えた分は、この先どう納品しても必ず廃棄になる。
+ *  - waste(stock, remaining) : 手持ち stock、残り remaining 個のときの確定した廃棄のコスト（スコア単位）
+ *  - 貪欲法は1ターンごとに begin(t) で残りを進め、操作を決めたら commit(Δ手持ち) で収支を更新する
+ *  - marginal(Δ) : 候補の手持ちの増減 Δ（注いだ量 − 廃棄 − 納品1g）に対する絵の具のコスト（スコア単位）。
+ *    そのまま納品（Δ = −1）との差で、次の2つの大きい方（同じグラムを二重に数えない）
+ *      確定：手持ちが残りターゲット数を超えて増える分 waste(stock + Δ) − waste(stock − 1)
+ *      見込み：納品1gを超えて手持ちに残す Δ g（注ぎ足し・レシピの配合色）が廃棄になる見込み → keptWaste × D × Δ
+ *      （keptWaste は SolverParams。1 だと早い段階の注ぎ足しも確定廃棄と同じ値段、0 だと確定分だけ）
+ *  - cost(Δ) : marginal を色差の単位（1e4 分の1）にしたもの
+ *  → 貪欲法（cost）とビームサーチ（marginal）はこの1つの式で手持ちを増減する候補を比べる。
+ *    捨てた j g は注いだのに納品しない量なので、各評価で D × j を別に加える
+ *  - 捨てるかどうかは、グループごとの使い道の見積もりを別に持たず、この収支と色差だけで決める。
+ *    捨てずに残した分が使われない見込みは marginal（確定した廃棄・keptWaste）に入っており、
+ *    グループの色が先のターゲットから遠いほど D × j を割り引く見積もりを足すと、どの割引の強さでも悪化した
+ */
+final class CostLedger {
+
+    static final double ERROR_SCALE = 1e4;
+
+    final int D, H;
+    final double keptWaste;
+    private int stock;     // 手持ちのグラム数（初期の1gずつを含む）
+    private int remaining; // このターンの納品後に残るターゲット数
+
+    CostLedger(int D, int H, int stock, double keptWaste) {
+        this.D = D;
+        this.H = H;
+        this.keptWaste = keptWaste;
+        this.stock = stock;
+        this.remaining = H;
+    }
+
+    // 確定した廃棄（スコア単位）
+    static double waste(int D, int stock, int remaining) {
+        return stock > remaining ? (double) D * (stock - remaining) : 0.0;
+    }
+
+    double waste(int stock, int remaining) {
+        return waste(D, stock, remaining);
+    }
+
+    void begin(int t) {
+        remaining = H - t - 1;
+    }
+
+    // 手持ちが delta だけ変わる候補の絵の具のコスト（スコア単位、直接納品が0）
+    static double marginal(int D, int stock, int remaining, int delta, double keptWaste) {
+        double committed = waste(D, stock + delta, remaining) - waste(D, stock - 1, remaining);
+        return delta > 0 ? Math.max(committed, keptWaste * D * delta) : committed;
+    }
+
+    // 同じく色差単位
+    double cost(int delta) {
+        return marginal(D, stock, remaining, delta, keptWaste) / ERROR_SCALE;
+    }
+
+    void commit(int delta) {
+        stock += delta;
+    }
+
+    int stock() {
+        return stock;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * 凸包射影エンジン
+ * 各ターゲット色について、K本のチューブ色の凸結合で到達できる最も近い点を
+ * 単体制約つき最小二乗（min ||Σ w_k tube_k - target||², w ≥ 0, Σ w = 1）で求め、
+ * ウェル容量以内の整数グラム比（レシピ）に丸めて起動時に全H個を前計算する。
+ *  - weights[h*K + k]  : 連続解の重み
+ *  - recipe[h*K + k]   : 整数レシピ（各チューブのグラム数）
+ *  - recipeGrams[h]    : レシピの総グラム数（1〜capacity）
+ *  - recipeColor[h*3+d]: レシピで作れる色
+ *  - recipeDist[h]     : レシピ色とターゲットの距離
+ *  - hullDist[h]       : 連続解（凸包上の最寄り点）とターゲットの距離。どの配合もこれより近づけない
+ * 解法は使わない（2×2ウェルの容量4以内の配合は混色格子 MixtureLattice がすべて含み、
+ * 大きいウェルのレイアウトはどの D でも悪化した）。PaletteSimulator が色差の下界（errorBound）を表示するのに使う。
+ */
+final class HullProjection {
+
+    private static final int MAX_ITER = 150;
+    private static final double EPS = 1e-12;
+
+    final int K, H, capacity;
+    final double[] weights;
+    final int[] recipe;
+    final int[] recipeGrams;
+    final double[] recipeColor;
+    final double[] recipeDist;
+    final double[] hullDist;
+
+    private HullProjection(int K, int H, int capacity) {
+        this.K = K;
+        this.H = H;
+        this.capacity = capacity;
+        weights = new double[H * K];
+        recipe = new int[H * K];
+        recipeGrams = new int[H];
+        recipeColor = new double[H * 3];
+        recipeDist = new double[H];
+        hullDist = new double[H];
+    }
+
+    // --- 全ターゲットの射影とレシピを前計算（tubes/targetsはフラット配列）---
+    static HullProjection build(double[] tubes, int K, double[] targets, int H, int capacity) {
+        HullProjection hp = new HullProjection(K, H, capacity);
+
+        // グラム行列 G = AᵀA（A: 3×K）の最大固有値からリプシッツ定数を求める
+        double[] gram = new double[K * K];
+        for (int i = 0; i < K; i++) {
+            for (int j = 0; j < K; j++) {
+                gram[i * K + j] = tubes[i * 3] * tubes[j * 3]
+                        + tubes[i * 3 + 1] * tubes[j * 3 + 1]
+                        + tubes[i * 3 + 2] * tubes[j * 3 + 2];
+            }
+        }
+        double lipschitz = 2.0 * maxEigen(gram, K) + EPS;
+
+        double[] w = new double[K];
+        double[] y = new double[K];
+        double[] prev = new double[K];
+        double[] grad = new double[K];
+        double[] sortBuf = new double[K];
+        int[] counts = new int[K];
+        int[] bestCounts = new int[K];
+
+        for (int h = 0; h < H; h++) {
+            double tr = targets[h * 3], tg = targets[h * 3 + 1], tb = targets[h * 3 + 2];
+            for (int k = 0; k < K; k++) {
+                w[k] = 1.0 / K;
+                y[k] = w[k];
+            }
+
+            // FISTA（射影勾配の加速版）で単体上の最小二乗を解く
+            double momentum = 1.0;
+            for (int it = 0; it < MAX_ITER; it++) {
+                // ∇ = 2Aᵀ(Ay - t)：3次元を経由して O(K) で計算
+                double ar = -tr, ag = -tg, ab = -tb;
+                for (int k = 0; k < K; k++) {
+                    ar += tubes[k * 3] * y[k];
+                    ag += tubes[k * 3 + 1] * y[k];
+                    ab += tubes[k * 3 + 2] * y[k];
+                }
+                for (int k = 0; k < K; k++) {
+                    grad[k] = 2.0 * (tubes[k * 3] * ar + tubes[k * 3 + 1] * ag + tubes[k * 3 + 2] * ab);
+                }
+                System.arraycopy(w, 0, prev, 0, K);
+                for (int k = 0; k < K; k++) w[k] = y[k] - grad[k] / lipschitz;
+                projectSimplex(w, K, sortBuf);
+
+                double nextMomentum = (1.0 + Math.sqrt(1.0 + 4.0 * momentum * momentum)) / 2.0;
+                double beta = (momentum - 1.0) / nextMomentum;
+                double change = 0.0;
+                for (int k = 0; k < K; k++) {
+                    double diff = w[k] - prev[k];
+                    y[k] = w[k] + beta * diff;
+                    change += diff * diff;
+                }
+                momentum = nextMomentum;
+                if (change < 1e-16) break;
+            }
+            System.arraycopy(w, 0, hp.weights, h * K, K);
+            double hr = -tr, hg = -tg, hb = -tb;
+            for (int k = 0; k < K; k++) {
+                hr += tubes[k * 3] * w[k];
+                hg += tubes[k * 3 + 1] * w[k];
+                hb += tubes[k * 3 + 2] * w[k];
+            }
+            hp.hullDist[h] = Math.sqrt(sq(hr, hg, hb));
+
+            // 容量以内の整数比に丸める（総量ごとに最大剰余法＋1g移動の局所改善）
+            double bestSq = Double.MAX_VALUE;
+            int bestTotal = 1;
+            for (int total = 1; total <= capacity; total++) {
+                double sq = roundRecipe(w, K, total, tubes, tr, tg, tb, counts, sortBuf);
+                if (sq < bestSq - EPS) {
+                    bestSq = sq;
+                    bestTotal = total;
+                    System.arraycopy(counts, 0, bestCounts, 0, K);
+                }
+            }
+            System.arraycopy(bestCounts, 0, hp.recipe, h * K, K);
+            hp.recipeGrams[h] = bestTotal;
+            double sr = 0, sg = 0, sb = 0;
+            for (int k = 0; k < K; k++) {
+                sr += bestCounts[k] * tubes[k * 3];
+                sg += bestCounts[k] * tubes[k * 3 + 1];
+                sb += bestCounts[k] * tubes[k * 3 + 2];
+            }
+            hp.recipeColor[h * 3] = sr / bestTotal;
+            hp.recipeColor[h * 3 + 1] = sg / bestTotal;
+            hp.recipeColor[h * 3 + 2] = sb / bestTotal;
+            hp.recipeDist[h] = Math.sqrt(bestSq);
+        }
+        return hp;
+    }
+
+    // --- 色差の合計 E の下界（どの操作列でも各納品はチューブ色の凸結合なので、hullDist より近づけない）---
+    double errorBound() {
+        double sum = 0.0;
+        for (int h = 0; h < H; h++) sum += hullDist[h];
+        return sum;
+    }
+
+    // --- 連続重みを総量totalの整数グラムに丸め、二乗誤差を返す ---
+    private static double roundRecipe(double[] w, int K, int total, double[] tubes,
+                                      double tr, double tg, double tb, int[] counts, double[] frac) {
+        int used = 0;
+        for (int k = 0; k < K; k++) {
+            double x = w[k] * total;
+            counts[k] = (int) Math.floor(x + 1e-12);
+            frac[k] = x - counts[k];
+            used += counts[k];
+        }
+        while (used < total) {
+            int best = 0;
+            for (int k = 1; k < K; k++) if (frac[k] > frac[best]) best = k;
+            counts[best]++;
+            frac[best] = -1.0;
+            used++;
+        }
+
+        double sr = 0, sg = 0, sb = 0;
+        for (int k = 0; k < K; k++) {
+            sr += counts[k] * tubes[k * 3];
+            sg += counts[k] * tubes[k * 3 + 1];
+            sb += counts[k] * tubes[k * 3 + 2];
+        }
+        double sq = sq(sr / total - tr, sg / total - tg, sb / total - tb);
+
+        // 1gをチューブiからjへ移して改善する限り繰り返す
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < K; i++) {
+                if (counts[i] == 0) continue;
+                for (int j = 0; j < K; j++) {
+                    if (i == j) continue;
+                    double nr = sr - tubes[i * 3] + tubes[j * 3];
+                    double ng = sg - tubes[i * 3 + 1] + tubes[j * 3 + 1];
+                    double nb = sb - tubes[i * 3 + 2] + tubes[j * 3 + 2];
+                    double nsq = sq(nr / total - tr, ng / total - tg, nb / total - tb);
+                    if (nsq < sq - EPS) {
+                        sq = nsq;
+                        sr = nr; sg = ng; sb = nb;
+                        counts[i]--;
+                        counts[j]++;
+                        improved = true;
+                        if (counts[i] == 0) break;
+                    }
+                }
+            }
+        }
+        return sq;
+    }
+
+    // --- 確率単体への射影（ソートによる閾値計算）---
+    private static void projectSimplex(double[] v, int n, double[] buf) {
+        System.arraycopy(v, 0, buf, 0, n);
+        java.util.Arrays.sort(buf, 0, n);
+        double cum = 0.0;
+        double theta = 0.0;
+        for (int i = n - 1; i >= 0; i--) {
+            cum += buf[i];
+            double t = (cum - 1.0) / (n - i);
+            if (i == 0 || buf[i - 1] <= t) {
+                theta = t;
+                break;
+            }
+        }
+        for (int i = 0; i < n; i++) v[i] = Math.max(0.0, v[i] - theta);
+    }
+
+    // --- べき乗法で対称行列の最大固有値を求める ---
+    private static double maxEigen(double[] m, int n) {
+        double[] v = new double[n];
+        double[] mv = new double[n];
+        java.util.Arrays.fill(v, 1.0 / Math.sqrt(n));
+        double lambda = 0.0;
+        for (int it = 0; it < 100; it++) {
+            double norm = 0.0;
+            for (int i = 0; i < n; i++) {
+                double s = 0.0;
+                for (int j = 0; j < n; j++) s += m[i * n + j] * v[j];
+                mv[i] = s;
+                norm += s * s;
+            }
+            norm = Math.sqrt(norm);
+            if (norm < EPS) return 0.0;
+            for (int i = 0; i < n; i++) v[i] = mv[i] / norm;
+            if (Math.abs(norm - lambda) < 1e-12 * norm) {
+                lambda = norm;
+                break;
+            }
+            lambda = norm;
+        }
+        return lambda;
+    }
+
+    private static double sq(double a, double b, double c) {
+        return a * a + b * b + c * c;
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 入力生成器（tools/src/bin/gen.rs / lib.rs の gen と同じ手順・同じ乱数列）
+ * シードからケースを作り、ファイルを介さずに入力テキストのバイト列のまま ProblemInput.parse に渡す。
+ *  - 乱数は ChaCha20Rng（rand_chacha の seed_from_u64 と同じ）
+ *  - K / T / D は --K / --T / --D で固定できる（乱数は固定しても同じだけ消費する → 他の値は変わらない）
+ *  - 色は 1e-5 単位の整数で持ち、"{:.5}" と同じ文字列を直接書く
+ * 使い方: java InputGenerator <seeds.txt> [-d 出力先] [--K k] [--T t] [--D d] [-v]
+ */
+final class InputGenerator {
+
+    static final int N = 20;
+    static final int H = 1000;
+
+    private InputGenerator() {
+    }
+
+    // --- 1ケース分の入力テキスト（fixK / fixT / fixD は null なら乱数の値）---
+    static byte[] generate(long seed, Integer fixK, Integer fixT, Integer fixD) {
+        ChaCha20Rng rng = ChaCha20Rng.seedFromU64(seed);
+        int K = rng.nextIntInclusive(4, 20);
+        if (fixK != null) K = fixK;
+        int T = (int) roundHalfAway(4000.0 * Math.pow(2.0, rng.nextDouble(0.0, 4.0)));
+        if (fixT != null) T = fixT;
+        int D = (int) roundHalfAway(Math.pow(10.0, rng.nextDouble(1.0, 4.0)));
+        if (fixD != null) D = fixD;
+
+        // チューブ色（1e-5単位の整数）
+        int[] own = new int[K * 3];
+        for (int i = 0; i < own.length; i++) own[i] = rng.nextIntInclusive(0, 100000);
+
+        StringBuilder sb = new StringBuilder(32 * (K + H));
+        sb.append(N).append(' ').append(K).append(' ').append(H).append(' ')
+          .append(T).append(' ').append(D).append('\n');
+        for (int k = 0; k < K; k++) {
+            appendColor(sb, own[k * 3], own[k * 3 + 1], own[k * 3 + 2]);
+        }
+
+        // ターゲット色：指数分布の重みを正規化したチューブ色の凸結合（lib.rs と同じ順序で和を取る）
+        double[] xs = new double[K];
+        for (int h = 0; h < H; h++) {
+            double sum = 0.0;
+            for (int k = 0; k < K; k++) {
+                xs[k] = -Math.log(rng.nextDouble());
+                sum += xs[k];
+            }
+            for (int k = 0; k < K; k++) xs[k] /= sum;
+            int[] c = new int[3];
+            for (int d = 0; d < 3; d++) {
+                double s = 0.0;
+                for (int k = 0; k < K; k++) s += xs[k] * (own[k * 3 + d] * 1e-5);
+                c[d] = (int) roundHalfAway(1e5 * s);
+            }
+            appendColor(sb, c[0], c[1], c[2]);
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // --- 生成した入力をそのままパーサに流す ---
+    static ProblemInput generateInput(long seed, Integer fixK, Integer fixT, Integer fixD) {
+        return ProblemInput.parse(generate(seed, fixK, fixT, fixD));
+    }
+
+    // Rust の f64::round（0.5 は0から遠い側へ）
+    static double roundHalfAway(double x) {
+        double f = Math.floor(x);
+        double frac = x - f;
+        if (frac > 0.5 || (frac == 0.5 && x > 0)) return f + 1.0;
+        return f;
+    }
+
+    private static void appendColor(StringBuilder sb, int r, int g, int b) {
+        appendFixed(sb, r);
+        sb.append(' ');
+        appendFixed(sb, g);
+        sb.append(' ');
+        appendFixed(sb, b);
+        sb.append('\n');
+    }
+
+    // 1e-5単位の非負整数を "0.xxxxx" 形式で書く
+    private static void appendFixed(StringBuilder sb, int v) {
+        sb.append(v / 100000).append('.');
+        int frac = v % 100000;
+        for (int p = 10000; p > 0; p /= 10) sb.append((char) ('0' + frac / p % 10));
+    }
+
+    static List<Long> readSeeds(Path path) throws IOException {
+        List<Long> seeds = new ArrayList<>();
+        for (String line : Files.readAllLines(path)) {
+            String s = line.trim();
+            if (!s.isEmpty()) seeds.add(Long.parseUnsignedLong(s));
+        }
+        return seeds;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String seedsPath = null;
+        Path dir = Paths.get("in");
+        Integer fixK = null, fixT = null, fixD = null;
+        boolean verbose = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-d": case "--dir": dir = Paths.get(args[++i]); break;
+                case "--K": fixK = Integer.parseInt(args[++i]); break;
+                case "--T": fixT = Integer.parseInt(args[++i]); break;
+                case "--D": fixD = Integer.parseInt(args[++i]); break;
+                case "-v": case "--verbose": verbose = true; break;
+                default: seedsPath = args[i];
+            }
+        }
+        if (seedsPath == null) {
+            System.err.println("Usage: java InputGenerator <seeds.txt> [-d dir] [--K k] [--T t] [--D d] [-v]");
+            return;
+        }
+        Files.createDirectories(dir);
+        List<Long> seeds = readSeeds(Paths.get(seedsPath));
+        if (verbose) System.out.println("file,seed,K,T,D");
+        for (int id = 0; id < seeds.size(); id++) {
+            long seed = seeds.get(id);
+            byte[] text = generate(seed, fixK, fixT, fixD);
+            String name = String.format("%04d", id);
+            if (verbose) {
+                ProblemInput in = ProblemInput.parse(text);
+                System.out.printf("%s,%s,%d,%d,%d%n", name, Long.toUnsignedString(seed), in.K, in.T, in.D);
+            }
+            Files.write(dir.resolve(name + ".txt"), text);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ホットパスのマイクロベンチマーク
+ * 色差・追加注ぎ（グループ × K）・混合ペア・操作実行時のグループ更新・マス単位の仕切り切り替えを単独で、
+ * さらに固定シードでの1ケース全体（貪欲法 / 固定幅ビーム）を計測する。
+ *  - 入力は InputGenerator でシードから生成した in.txt と同じ形のデータ
+ *  - パレット状態は貪欲法の途中経過に近い形（1〜3g のグループ・一部結合済み）を固定乱数で作る
+ *  - 各ベンチはウォームアップ後に反復を繰り返し、ops/s・ns/op・1操作あたりの確保バイト数を出す
+ *    （確保量はスレッド単位の割り当てカウンタで測る：GCプロファイラの alloc.rate.norm に相当）
+ *  - 出力は1ベンチ1行の固定書式なので、コミット間で diff / 比較できる（-csv でCSV）
+ * 使い方: java KernelBench [-seeds 開始..終了] [-warmup 回数] [-iters 回数] [-ms 1反復の時間] [-only 名前] [-csv]
+ */
+final class KernelBench {
+
+    // ベンチ対象：1回の呼び出しで ops 回分の処理を行い、結果を黒穴に流す
+    interface Kernel {
+        double run();
+    }
+
+    static final class Bench {
+        final String name;
+        final String unit; // 1操作の単位（表示用）
+        final int opsPerCall;
+        final Kernel kernel;
+
+        Bench(String name, String unit, int opsPerCall, Kernel kernel) {
+            this.name = name;
+            this.unit = unit;
+            this.opsPerCall = opsPerCall;
+            this.kernel = kernel;
+        }
+    }
+
+    private static volatile double sink; // 結果を捨てずに書き込み、デッドコード除去を防ぐ
+
+    public static void main(String[] args) {
+        long from = 0, to = 3;
+        int warmup = 5, iters = 10;
+        long iterMillis = 200;
+        String only = null;
+        boolean csv = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-seeds": {
+                    String r = args[++i];
+                    int sep = r.indexOf("..");
+                    from = sep < 0 ? 0 : Long.parseLong(r.substring(0, sep));
+                    to = Long.parseLong(sep < 0 ? r : r.substring(sep + 2));
+                    break;
+                }
+                case "-warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "-iters": iters = Integer.parseInt(args[++i]); break;
+                case "-ms": iterMillis = Long.parseLong(args[++i]); break;
+                case "-only": only = args[++i]; break;
+                case "-csv": csv = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        System.setErr(new java.io.PrintStream(java.io.OutputStream.nullOutputStream())); // 解答側のログを捨てる
+
+        List<ProblemInput> inputs = new ArrayList<>();
+        for (long seed = from; seed < to; seed++) inputs.add(InputGenerator.generateInput(seed, null, null, null));
+
+        if (csv) System.out.println("bench,unit,ops_per_s,ns_per_op,ns_per_op_err,bytes_per_op");
+        for (Bench b : benches(inputs)) {
+            if (only != null && !b.name.contains(only)) continue;
+            measure(b, warmup, iters, iterMillis * 1_000_000L, csv);
+        }
+    }
+
+    // --- ベンチ一覧（フィクスチャは最初に一度だけ作る）---
+    static List<Bench> benches(List<ProblemInput> inputs) {
+        List<Bench> list = new ArrayList<>();
+        Fixture[] fx = new Fixture[inputs.size()];
+        for (int i = 0; i < fx.length; i++) fx[i] = new Fixture(inputs.get(i), 12345L + i);
+
+        // 色差：全ターゲット × 全グループ色
+        int distOps = 0;
+        for (Fixture f : fx) distOps += f.input.H * f.wellCount;
+        list.add(new Bench("colorDist", "pair", distOps, () -> {
+            double s = 0.0;
+            for (Fixture f : fx) {
+                double[] t = f.input.targets, c = f.groups.colors;
+                for (int h = 0; h < f.input.H; h++) {
+                    for (int g = 0; g < f.wellCount; g++) {
+                        s += Math.sqrt(Main.sqDist(c[g * 3], c[g * 3 + 1], c[g * 3 + 2], t[h * 3], t[h * 3 + 1], t[h * 3 + 2]));
+                    }
+                }
+            }
+            return s;
+        }));
+
+        // 追加注ぎ・混合ペア：1ターゲット分のループ（候補色キャッシュが効いた状態と、毎ターン全グループが変わった状態）
+        for (boolean cold : new boolean[]{false, true}) {
+            String suffix = cold ? "Cold" : "";
+            list.add(new Bench("addPaint" + suffix, "turn", Fixture.TURNS * fx.length, () -> {
+                double s = 0.0;
+                for (Fixture f : fx) {
+                    for (int t = 0; t < Fixture.TURNS; t++) {
+                        if (cold) f.touchAll();
+                        double[] tg = f.input.targets;
+                        f.best.reset(Double.MAX_VALUE);
+                        Main.evaluateAdding(f.best, f.groups, f.cache, f.input.K, f.capacity,
+                                f.operationWeights, f.tubeWeights, tg[t * 3], tg[t * 3 + 1], tg[t * 3 + 2], f.ledger);
+                        s += f.best.cost;
+                    }
+                }
+                return s;
+            }));
+            list.add(new Bench("mixPairs" + suffix, "turn", Fixture.TURNS * fx.length, () -> {
+                double s = 0.0;
+                for (Fixture f : fx) {
+                    f.groups.flatten();
+                    for (int t = 0; t < Fixture.TURNS; t++) {
+                        if (cold) f.touchAll();
+                        double[] tg = f.input.targets;
+                        f.best.reset(Double.MAX_VALUE);
+                        Main.evaluateMixing(0, f.wellCount, f.best, f.groups, f.cache, f.adjacency, f.input.K,
+                                f.capacity, f.operationWeights, f.tubeWeights, tg[t * 3], tg[t * 3 + 1], tg[t * 3 + 2],
+                                Integer.MAX_VALUE, f.ledger);
+                        s += f.best.cost;
+                    }
+                }
+                return s;
+            }));
+        }
+
+        // 操作実行：スナップショット複写 → 結合・注ぎ・納品のグループ更新
+        list.add(new Bench("groupUpdate", "turn", Fixture.TURNS * fx.length, () -> {
+            double s = 0.0;
+            for (Fixture f : fx) {
+                f.work.copyFrom(f.groups);
+                double[] tubes = f.input.tubes;
+                for (int t = 0; t < Fixture.TURNS; t++) {
+                    int w = f.script[t];
+                    int[] nb = f.adjacency.neighbors[w];
+                    int root = f.work.find(w);
+                    if (nb.length > 0 && (t & 3) == 0) root = f.work.union(w, nb[t % nb.length]);
+                    double grams = f.work.grams[root];
+                    int k = t % f.input.K;
+                    for (int d = 0; d < 3; d++) {
+                        f.color[d] = (f.work.colors[root * 3 + d] * grams + tubes[k * 3 + d]) / (grams + 1.0);
+                    }
+                    f.work.setColor(root, f.color);
+                    f.work.grams[root] = grams + 1.0;
+                    f.work.take(root);
+                    s += f.work.grams[root];
+                }
+            }
+            return s;
+        }));
+
+        // 仕切りの切り替え（CellPalette）：2×2ウェルの境界を外して結合 → 戻して分割 の2回で1組
+        list.add(new Bench("wallToggle", "toggle", Fixture.TURNS * 2 * fx.length, () -> {
+            double s = 0.0;
+            for (Fixture f : fx) {
+                int[] e = f.edges;
+                for (int t = 0; t < Fixture.TURNS; t++) {
+                    f.cells.toggle(e[t * 4], e[t * 4 + 1], e[t * 4 + 2], e[t * 4 + 3]);
+                    s += f.cells.componentCount();
+                    f.cells.toggle(e[t * 4], e[t * 4 + 1], e[t * 4 + 2], e[t * 4 + 3]);
+                }
+            }
+            return s;
+        }));
+
+        // 1ケース全体（ターン単位）：貪欲法と固定幅ビーム
+        list.add(new Bench("solveGreedy", "turn", inputs.size() * 1000, () -> solveAll(inputs, "0")));
+        list.add(new Bench("solveBeam8", "turn", inputs.size() * 1000, () -> solveAll(inputs, "8")));
+        return list;
+    }
+
+    private static double solveAll(List<ProblemInput> inputs, String width) {
+        String saved = System.getProperty("beam.width");
+        String savedShare = System.getProperty("anneal.share");
+        System.setProperty("beam.width", width);
+        System.setProperty("anneal.share", "0"); // 焼きなましは締め切りまで回るので計測から外す
+        try {
+            double s = 0.0;
+            for (ProblemInput in : inputs) {
+                OutputSink out = new OutputSink(1 << 16);
+                Main.solve(in, new TimeBudget(1_000_000L), out); // 時間切れで打ち切られないよう十分な予算
+                s += out.size();
+            }
+            return s;
+        } finally {
+            if (saved == null) System.clearProperty("beam.width");
+            else System.setProperty("beam.width", saved);
+            if (savedShare == null) System.clearProperty("anneal.share");
+            else System.setProperty("anneal.share", savedShare);
+        }
+    }
+
+    // --- 計測：ウォームアップ後、各反復で iterNanos 以上呼び出し、反復ごとの ns/op を集計 ---
+    static void measure(Bench b, int warmup, int iters, long iterNanos, boolean csv) {
+        for (int i = 0; i < warmup; i++) iterate(b, iterNanos);
+        double[] nsPerOp = new double[iters];
+        long bytes = 0, ops = 0;
+        for (int i = 0; i < iters; i++) {
+            long a0 = allocatedBytes();
+            long[] r = iterate(b, iterNanos);
+            bytes += allocatedBytes() - a0;
+            ops += r[1];
+            nsPerOp[i] = (double) r[0] / r[1];
+        }
+        double mean = 0.0;
+        for (double v : nsPerOp) mean += v;
+        mean /= iters;
+        double var = 0.0;
+        for (double v : nsPerOp) var += (v - mean) * (v - mean);
+        double err = iters > 1 ? Math.sqrt(var / (iters - 1)) : 0.0;
+        double bytesPerOp = ops > 0 && bytes >= 0 ? (double) bytes / ops : Double.NaN;
+        if (csv) {
+            System.out.printf("%s,%s,%.1f,%.2f,%.2f,%.2f%n", b.name, b.unit, 1e9 / mean, mean, err, bytesPerOp);
+        } else {
+            System.out.printf("%-12s %14.1f ops/s %12.2f +- %8.2f ns/%s %10.2f B/%s%n",
+                    b.name, 1e9 / mean, mean, err, b.unit, bytesPerOp, b.unit);
+        }
+    }
+
+    // 1反復：{経過ナノ秒, 操作数}
+    private static long[] iterate(Bench b, long iterNanos) {
+        long ops = 0;
+        long start = System.nanoTime(), elapsed;
+        double s = 0.0;
+        do {
+            s += b.kernel.run();
+            ops += b.opsPerCall;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterNanos);
+        sink = s;
+        return new long[]{elapsed, ops};
+    }
+
+    // 現在のスレッドがこれまでに確保したバイト数（取得できなければ -1）
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // --- 1ケース分のカーネル用フィクスチャ：2×2ウェル10×10の途中経過に近いパレット ---
+    static final class Fixture {
+        static final int TURNS = 64; // カーネル1回あたりに評価するターゲット数
+
+        final ProblemInput input;
+        final int wellCount = 100;
+        final int capacity = 4;
+        final WellGroups groups;
+        final WellGroups work;
+        final WellAdjacency adjacency;
+        final Main.MixCandidate best;
+        final CandidateCache cache;
+        final CostLedger ledger;               // 手持ち0：確定廃棄が出ないので候補のコストは色差のみ
+        final double[] operationWeights = {1.0, 1.0, 1.0, 1.0, 1.0};
+        final double[] tubeWeights;
+        final int[] script = new int[TURNS];
+        final double[] color = new double[3];
+        final CellPalette cells;               // 20×20 マスに2×2ウェルを並べた仕切り
+        final int[] edges = new int[TURNS * 4]; // 切り替える境界マスの組 {x1, y1, x2, y2}
+
+        Fixture(ProblemInput input, long seed) {
+            this.input = input;
+            Random rnd = new Random(seed);
+            int[] wellX = new int[wellCount], wellY = new int[wellCount];
+            for (int w = 0; w < wellCount; w++) {
+                wellX[w] = (w % 10) * 2;
+                wellY[w] = (w / 10) * 2;
+            }
+            adjacency = WellAdjacency.build(wellX, wellY, 2);
+            groups = new WellGroups(wellCount);
+            work = new WellGroups(wellCount);
+            double[] c = new double[3];
+            for (int w = 0; w < wellCount; w++) {
+                // 1〜2本のチューブを混ぜた色を1〜3g
+                int k1 = rnd.nextInt(input.K), k2 = rnd.nextInt(input.K);
+                double a = rnd.nextDouble();
+                for (int d = 0; d < 3; d++) c[d] = a * input.tubes[k1 * 3 + d] + (1 - a) * input.tubes[k2 * 3 + d];
+                groups.setColor(w, c);
+                groups.grams[w] = 1 + rnd.nextInt(3);
+            }
+            // 一部の隣接ウェルを結合（容量を超えない範囲）
+            for (int i = 0; i < 15; i++) {
+                int w = rnd.nextInt(wellCount);
+                int[] nb = adjacency.neighbors[w];
+                int o = nb[rnd.nextInt(nb.length)];
+                int ra = groups.find(w), rb = groups.find(o);
+                if (ra != rb && groups.grams[ra] + groups.grams[rb] <= capacity) groups.union(ra, rb);
+            }
+            tubeWeights = new double[input.K];
+            java.util.Arrays.fill(tubeWeights, 1.0);
+            for (int t = 0; t < TURNS; t++) script[t] = rnd.nextInt(wellCount);
+            best = new Main.MixCandidate(wellCount);
+            cache = new CandidateCache(wellCount, input.tubes, input.K, adjacency);
+            ledger = new CostLedger(input.D, input.H, 0, SolverParams.defaults().keptWaste());
+
+            int n = 20;
+            boolean[] wv = new boolean[n * (n - 1)], wh = new boolean[(n - 1) * n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j + 1 < n; j++) wv[i * (n - 1) + j] = j / 2 != (j + 1) / 2;
+            }
+            for (int i = 0; i + 1 < n; i++) {
+                for (int j = 0; j < n; j++) wh[i * n + j] = i / 2 != (i + 1) / 2;
+            }
+            cells = new CellPalette(n, wv, wh);
+            for (int t = 0; t < TURNS; t++) {
+                int[] bd = adjacency.borders[script[t]];
+                int k = rnd.nextInt(bd.length / 4);
+                System.arraycopy(bd, k * 4, edges, t * 4, 4);
+            }
+        }
+
+        // 全グループの版を進める（候補色キャッシュを無効化）
+        void touchAll() {
+            for (int w = 0; w < wellCount; w++) groups.touch(w);
+        }
+    }
+}
@@ -6,6 +6,9 @@
  *    - 追加注ぎ：容量チェックを厳密に行い、重み付き平均で色を計算
  *    - 混合：隣接するウェルのみを考慮し、効率的な混合を実現
  *    - 混合＋追加注ぎ：混合後の色をさらに改善
+ *    - 注ぎ足し：2〜3gの配合を比率表（MixtureLattice）から引き、一度に足して比率を作る
+ *    - 廃棄＋追加注ぎ：グループを一部（または全部）捨ててから1g足し、1gの追加では動かない比率を作る
+ *    - 分割（＋追加注ぎ）：混合した2ウェルの仕切りを戻して半分ずつに分け、片方で納品（グループ数を取り戻す）
  * 
  * 2. ウェル使用の効率化
  *    - 空きウェルの積極的な活用
@@ -16,146 +19,118 @@
  *    - 1グラム未満のウェルは使用不可
  *    - 容量オーバーを防ぐ厳密なチェック
  *    - フォールバック処理で必ず操作を実行
+ * 
+ * 4. ビームサーチ（BeamSearch）
+ *    - 上記の操作でH個のターゲットを通してB個のパレット状態を保持し、最良経路を出力
+ *    - -Dbeam.width=0 のときは以下の貪欲法で1ターンずつ決める
+ *
+ * 5. 計測（SolverMetrics）
+ *    - 候補数・採用操作・ターン時間・納品誤差を配列に記録し、終了時に -Dmetrics=json|csv で一度だけ出力
+ *
+ * 6. 後処理（PlanAnnealer）
+ *    - ビームサーチ・貪欲法の結果は OpPlan に記録して出力する
+ *    - 貪欲法の計画だけは annealShare > 0 のとき残り時間で焼きなます（ビームの計画ではほぼ受理されず、再生の分だけ時間を超えるため）
+ *    - 貪欲法は焼きなましの分（annealShare）を残した締め切りを見て、過ぎたら直接納品・追加注ぎだけで進める
+ *
+ * 7. レイアウト（PaletteLayout）
+ *    - 全面の2×2格子に固定（-Dlayout で指定可）。T が小さいときだけ、各ターゲットに2操作を残せる所まで列数を減らす
+ *
+ * 8. 操作数（OpScheduler）
+ *    - 残りのターゲットに2操作ずつ予約し、どの経路でも出力が T を超えないようにする
+ *    - 全ターゲットを納品できないほど T が小さいときは、T に収まる所まで単純に納品する（starve）
+ *
+ * 9. 絵の具の収支（CostLedger）
+ *    - 候補の手持ちの増減に対する絵の具のコスト（確定した廃棄の増分と、手持ちに残す分の廃棄見込みの大きい方）を
+ *      貪欲法・ビームサーチで同じ式（CostLedger.marginal）で加える。色差の重みでは割らない
  */
-import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
 
 public class Main {
 
     public static void main(String[] args) {
-        Scanner sc = new Scanner(System.in);
-        int N = sc.nextInt(); // パレットの一辺(20 固定)
-        int K = sc.nextInt(); // 絵の具の種類数
-        int H = sc.nextInt(); // ターゲット色の数(1000 固定)
-        int T = sc.nextInt(); // 最大ターン数（未使用）
-        int D = sc.nextInt(); // 1グラム出すコストD（未使用）
-
-        // 絵の具の色（各RGB成分）を読み込み
-        double[][] tubes = new double[K][3];
-        for (int i = 0; i < K; i++) {
-            tubes[i][0] = sc.nextDouble();
-            tubes[i][1] = sc.nextDouble();
-            tubes[i][2] = sc.nextDouble();
-        }
-        // ターゲット色を読み込み
-        double[][] targets = new double[H][3];
-        for (int i = 0; i < H; i++) {
-            targets[i][0] = sc.nextDouble();
-            targets[i][1] = sc.nextDouble();
-            targets[i][2] = sc.nextDouble();
-        }
+        TimeBudget budget = TimeBudget.fromConfig(args); // 時間予算（第1引数 or -Dtime.limit.ms）
+        ProblemInput input = ProblemInput.read(System.in); // 標準入力を一括で読み込み
+        OutputSink out = new OutputSink(1 << 16); // 出力バッファ（終了時に一括出力）
+        SolverMetrics metrics = SolverMetrics.fromConfig(input.H); // -Dmetrics=json|csv のときだけ記録
+        solve(input, budget, out, metrics);
+        out.flush();
+        metrics.dump();
+    }
 
-        // --- コストに応じた詳細な戦略決定 ---
-        int wellSize = 2;
-        int wellsPerRow;
-        int wellCount;
-        double aggressiveFactor = 1.0; // 積極性パラメータ
-
-        if (D <= 2000) {
-            // 超低コスト：最大限活用
-            wellSize = 2;
-            wellsPerRow = N / wellSize;
-            wellCount = wellsPerRow * wellsPerRow;
-            aggressiveFactor = 1.3; // 積極的に混合・操作
-            System.err.println("Ultra low cost mode: " + wellsPerRow + "x" + wellsPerRow + " wells, aggressive=" + aggressiveFactor);
-        } else if (D <= 4000) {
-            // 低コスト：全面活用
-            wellSize = 2;
-            wellsPerRow = N / wellSize;
-            wellCount = wellsPerRow * wellsPerRow;
-            aggressiveFactor = 1.1;
-            System.err.println("Low cost mode: " + wellsPerRow + "x" + wellsPerRow + " wells, aggressive=" + aggressiveFactor);
-        } else if (D <= 6000) {
-            // 中コスト：バランス型
-            wellSize = 2;
-            wellsPerRow = (N-2) / wellSize;
-            wellCount = wellsPerRow * wellsPerRow;
-            aggressiveFactor = 0.9;
-            System.err.println("Medium cost mode: " + wellsPerRow + "x" + wellsPerRow + " wells, aggressive=" + aggressiveFactor);
-        } else {
-            // 高コスト：保守的
-            wellSize = 2;
-            wellsPerRow = (N-4) / wellSize;
-            wellCount = wellsPerRow * wellsPerRow;
-            aggressiveFactor = 0.7; // 保守的
-            System.err.println("High cost mode: " + wellsPerRow + "x" + wellsPerRow + " wells, aggressive=" + aggressiveFactor);
-        }
+    // --- 1ケースを解いて操作列をoutに書き込む（静的状態を持たないのでスレッドごとに並行実行できる）---
+    static void solve(ProblemInput input, TimeBudget budget, OutputSink out) {
+        solve(input, budget, out, SolverMetrics.disabled());
+    }
 
-        // --- 仕切り出力（動的分割）---
-        for (int i = 0; i < N; i++) {
-            for (int j = 0; j < N - 1; j++) {
-                boolean shouldPartition = false;
-                if (D <= 4000) {
-                    // 低コスト：全面分割
-                    shouldPartition = ((j + 1) % wellSize == 0);
-                } else {
-                    // 高コスト：端1マス除外して分割
-                    if (j >= 1 && j <= N - 3) {
-                        shouldPartition = ((j) % wellSize == 0);
-                    }
-                }
-                System.out.print(shouldPartition ? "1" : "0");
-                if (j < N - 2) System.out.print(" ");
-            }
-            System.out.println();
-        }
-        
-        for (int i = 0; i < N - 1; i++) {
-            for (int j = 0; j < N; j++) {
-                boolean shouldPartition = false;
-                if (D <= 4000) {
-                    // 低コスト：全面分割
-                    shouldPartition = ((i + 1) % wellSize == 0);
-                } else {
-                    // 高コスト：端1マス除外して分割
-                    if (i >= 1 && i <= N - 3) {
-                        shouldPartition = ((i) % wellSize == 0);
-                    }
-                }
-                System.out.print(shouldPartition ? "1" : "0");
-                if (j < N - 1) System.out.print(" ");
-            }
-            System.out.println();
+    static void solve(ProblemInput input, TimeBudget budget, OutputSink out, SolverMetrics metrics) {
+        solve(input, budget, out, metrics, SolverParams.forCase(input.K, input.D));
+    }
+
+    // params : 直書きしていた定数（SolverParams、チューニング時はケースごとに差し替える）
+    static void solve(ProblemInput input, TimeBudget budget, OutputSink out, SolverMetrics metrics,
+                      SolverParams params) {
+        int N = input.N; // パレットの一辺(20 固定)
+        int K = input.K; // 絵の具の種類数
+        int H = input.H; // ターゲット色の数(1000 固定)
+        int T = input.T; // 最大ターン数（OpScheduler で各ターゲットに配る）
+        int D = input.D; // 1グラム出すコストD
+
+        // 絵の具の色（各RGB成分）
+        double[][] tubes = input.tubeRows();
+        // ターゲット色
+        double[][] targets = input.targetRows();
+
+        // --- レイアウト決定：全面の2×2格子（T に収まらなければ列数を減らす）---
+        PaletteLayout layout = PaletteLayout.choose(input);
+        int wellCount = layout.wellCount;
+        int[] wellX = layout.wellX; // 各ウェルの左上x座標
+        int[] wellY = layout.wellY; // 各ウェルの左上y座標
+        WellAdjacency adjacency = layout.adjacency; // 隣接テーブル（レイアウト確定時に一度だけ構築）
+
+        // --- 仕切り出力と各ウェルの初期化（各ウェルが独立グループ、1gずつ）---
+        layout.writeWalls(out);
+        WellGroups groups = layout.fill(out, tubes, K); // ★色・グラム数はグループ代表が保持
+        double[] groupColors = groups.colors;
+        double[] groupGrams = groups.grams;
+
+        // --- 混色格子：ウェル容量以内の全配合を色空間グリッドに索引化 ---
+        // 配合数が上限を超える場合（-Dlayout で大きいウェルを指定したとき）は、上限に収まるグラム数までにする
+        int capacity = layout.capacity;
+        MixtureLattice lattice = MixtureLattice.build(input.tubes, K, MixtureLattice.gramsWithin(K, capacity, 300000));
+
+        // --- 操作数の配分：初期の注ぎを除いた T − wellCount 回（全ターゲットに2操作を残せなければ縮退）---
+        if (!OpScheduler.fits(T, H, wellCount)) {
+            starve(input, groups, wellX, wellY, T - wellCount, out);
+            return;
         }
+        OpScheduler schedule = new OpScheduler(T - wellCount, H, params.opPrice());
 
-        // --- 各ウェルの初期化（動的配置）---
-        double[][] wellColors = new double[wellCount][3]; // 各ウェルの色（RGB）
-        int[] wellX = new int[wellCount]; // 各ウェルの左上x座標
-        int[] wellY = new int[wellCount]; // 各ウェルの左上y座標
-        double[] wellGrams = new double[wellCount]; // 各ウェルのグラム数
-        int[] wellGroup = new int[wellCount]; // ★グループ管理を追加
-        
-        int idx = 0;
-        for (int wy = 0; wy < wellsPerRow; wy++) {
-            for (int wx = 0; wx < wellsPerRow; wx++) {
-                int x, y;
-                if (D <= 4000) {
-                    // 低コスト：(0,0)から開始
-                    x = wx * wellSize;
-                    y = wy * wellSize;
-                } else {
-                    // 高コスト：(1,1)から開始（端を1マス空ける）
-                    x = 1 + wx * wellSize;
-                    y = 1 + wy * wellSize;
-                }
-                
-                int tubeIdx = idx % K;
-                System.out.println("1 " + x + " " + y + " " + tubeIdx);
-                for (int d = 0; d < 3; d++) wellColors[idx][d] = tubes[tubeIdx][d];
-                wellX[idx] = x;
-                wellY[idx] = y;
-                wellGrams[idx] = 1.0;
-                wellGroup[idx] = idx; // ★初期状態では各ウェルが独立グループ
-                idx++;
-            }
+        // --- 操作計画（焼きなましの初期解）と、その開始状態 ---
+        OpPlan plan = new OpPlan(H, K, lattice);
+        WellGroups initialGroups = new WellGroups(wellCount);
+        initialGroups.copyFrom(groups);
+
+        // --- ビームサーチ（幅0のときは下の貪欲法）：締め切りまで探索し、焼きなましはかけない ---
+        int beamWidth = BeamSearch.chooseWidth(K, H, wellCount, budget);
+        if (beamWidth > 0) {
+            BeamSearch beam = new BeamSearch(input, wellX, wellY, adjacency, capacity,
+                    lattice, schedule, beamWidth, budget, params);
+            double eval = beam.run(groups, metrics);
+            System.err.println("Beam width=" + beamWidth + " eval=" + String.format("%.0f", eval)
+                    + " elapsed=" + budget.elapsedNanos() / 1_000_000 + "ms");
+            beam.export(plan);
+            finish(input, budget, out, metrics, params, plan, initialGroups, adjacency, capacity, lattice, wellX, wellY, false);
+            return;
         }
+        // 貪欲法は annealShare > 0 のとき、残り時間のその割合を焼きなましに残す（既定0：焼きなまさない）
+        TimeBudget searchBudget = budget.slice(1.0 - params.annealShare());
 
         // === 機械学習風の重み調整システム ===
-        double[] operationWeights = {1.0, 1.0, 1.0, 1.0}; // [直接納品, 追加注ぎ, 混合, 混合+追加]
-        int[] operationCounts = {0, 0, 0, 0};              // 各操作の実行回数
-        double[] operationSuccessSum = {0.0, 0.0, 0.0, 0.0}; // 各操作の成功度合計
-        double[] operationErrorSum = {0.0, 0.0, 0.0, 0.0};   // 各操作の誤差合計
+        double[] operationWeights = {1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0}; // [直接納品, 追加注ぎ, 混合, 混合+追加, レシピ注ぎ, 注ぎ足し, 廃棄+追加, 分割]
+        int[] operationCounts = {0, 0, 0, 0, 0, 0, 0, 0};                 // 各操作の実行回数
+        double[] operationSuccessSum = {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0}; // 各操作の成功度合計
+        double[] operationErrorSum = {0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0};   // 各操作の誤差合計
         
         // チューブごとの成功率
         double[] tubeWeights = new double[K];
@@ -168,31 +143,47 @@ public class Main {
         }
 
         int prevWell = -1;
-        int[] wellUsed = new int[wellCount];
+        int usedOps = 0; // 出力した操作数（初期の注ぎを除く）
+        int hurried = 0; // 締め切り後に簡易な候補だけで決めたターン数
+        CostLedger ledger = new CostLedger(D, H, wellCount, params.keptWaste()); // 手持ちの収支（初期の1gずつから）
+        int[] wellUsed = new int[wellCount]; // ウェル（メンバー）ごとの使用回数
+        MixCandidate mixScratch = new MixCandidate(wellCount); // 逐次評価時に使い回す
+        MixCandidate addScratch = new MixCandidate(0);         // 追加注ぎの最良候補
+        CandidateCache cache = new CandidateCache(wellCount, input.tubes, K, adjacency); // 版が変わったグループだけ候補色を再計算
+        double[] tubeFlat = input.tubes;     // tubes[k*3 + d]
+        double[] targetFlat = input.targets; // targets[t*3 + d]
+        double[] bestColor = new double[3];  // 採用候補の色（勝者のみ書き込む）
 
         for (int t = 0; t < H; t++) {
+            metrics.beginTurn();
             double minDist = Double.MAX_VALUE;
             int opType = -1;
-            int bestWell = -1, bestTube = -1;
-            int mixW1 = -1, mixW2 = -1, mixX1 = -1, mixY1 = -1, mixX2 = -1, mixY2 = -1;
-            double[] bestColor = new double[3];
+            int bestWell = -1, bestTube = -1, bestRecipe = -1, discardGrams = 0;
+            int mixW1 = -1, mixW2 = -1, mixMember = -1, mixBorder = -1;
+            double tr = targetFlat[t * 3], tg = targetFlat[t * 3 + 1], tb = targetFlat[t * 3 + 2];
+            // このターンに使える操作数（残りの予約を差し引いた分。予約を守っていれば常に2以上）
+            int opRoom = schedule.limit(t) - usedOps;
+            ledger.begin(t);
+            // 探索の締め切り（焼きなましの分を残した時刻）を過ぎたら、直接納品・追加注ぎ・空きウェルへの注ぎだけで進める
+            boolean hurry = searchBudget.expired();
+            if (hurry) hurried++;
 
             // === 学習による重み更新（50ターンごと） ===
             if (t > 0 && t % 50 == 0) {
-                for (int op = 0; op < 4; op++) {
+                for (int op = 0; op < operationWeights.length; op++) {
                     if (operationCounts[op] > 0) {
                         double avgSuccess = operationSuccessSum[op] / operationCounts[op];
                         double avgError = operationErrorSum[op] / operationCounts[op];
                         
                         // 成功率が高い操作の重みを増加、低い操作の重みを減少
-                        if (avgError < 0.1) { // 高精度
-                            operationWeights[op] *= 1.1;
-                        } else if (avgError > 0.3) { // 低精度
-                            operationWeights[op] *= 0.95;
+                        if (avgError < params.opGoodError()) { // 高精度
+                            operationWeights[op] *= params.opWeightUp();
+                        } else if (avgError > params.opBadError()) { // 低精度
+                            operationWeights[op] *= params.opWeightDown();
                         }
                         
                         // 重みの範囲制限
-                        operationWeights[op] = Math.max(0.5, Math.min(2.0, operationWeights[op]));
+                        operationWeights[op] = Math.max(params.opWeightMin(), Math.min(params.opWeightMax(), operationWeights[op]));
                     }
                 }
                 
@@ -200,22 +191,36 @@ public class Main {
                 for (int k = 0; k < K; k++) {
                     if (tubeCounts[k] > 0) {
                         double avgTubeSuccess = tubeSuccessSum[k] / tubeCounts[k];
-                        if (avgTubeSuccess < 0.1) {
-                            tubeWeights[k] *= 1.05; // 良いチューブの重みを増加
-                        } else if (avgTubeSuccess > 0.3) {
-                            tubeWeights[k] *= 0.98; // 悪いチューブの重みを減少
+                        if (avgTubeSuccess < params.tubeGoodError()) {
+                            tubeWeights[k] *= params.tubeWeightUp(); // 良いチューブの重みを増加
+                        } else if (avgTubeSuccess > params.tubeBadError()) {
+                            tubeWeights[k] *= params.tubeWeightDown(); // 悪いチューブの重みを減少
                         }
-                        tubeWeights[k] = Math.max(0.7, Math.min(1.5, tubeWeights[k]));
+                        tubeWeights[k] = Math.max(params.tubeWeightMin(), Math.min(params.tubeWeightMax(), tubeWeights[k]));
                     }
                 }
             }
 
-            // 既存ウェルそのまま納品（重み調整適用）
-            for (int w = 0; w < wellCount; w++) {
-                if (wellGrams[w] < 1.0) continue;
-                double penalty = (w == prevWell) ? 1.0 : 0.0;
-                penalty += 0.02 * wellUsed[w];
-                double dist = colorDist(wellColors[w], targets[t]) + penalty;
+            // 既存ウェルそのまま納品（重み調整適用）：グループ代表のみ評価
+            // 使用回数・前回ペナルティはメンバー単位で持ち、グループ内で最小のメンバーから納品する
+            int directCount = 0;
+            for (int g = 0; g < wellCount; g++) {
+                if (!groups.isRoot(g) || groupGrams[g] < 1.0) continue;
+                directCount++;
+                double penalty = Double.MAX_VALUE;
+                int member = g;
+                int m = g;
+                do {
+                    double p = (m == prevWell) ? params.prevPenalty() : 0.0;
+                    p += params.usedPenalty() * wellUsed[m];
+                    if (p < penalty || (p == penalty && m < member)) {
+                        penalty = p;
+                        member = m;
+                    }
+                    m = groups.next[m];
+                } while (m != g);
+                double cr = groupColors[g * 3], cg = groupColors[g * 3 + 1], cb = groupColors[g * 3 + 2];
+                double dist = Math.sqrt(sqDist(cr, cg, cb, tr, tg, tb)) + penalty;
                 
                 // 重み調整を適用
                 dist /= operationWeights[0]; // 直接納品の重み
@@ -223,121 +228,97 @@ public class Main {
                 if (dist < minDist) {
                     minDist = dist;
                     opType = 0;
-                    bestWell = w;
-                    for (int d = 0; d < 3; d++) bestColor[d] = wellColors[w][d];
+                    bestWell = member;
+                    bestColor[0] = cr; bestColor[1] = cg; bestColor[2] = cb;
                 }
             }
 
             // 追加注ぎ（重み調整適用）
-            for (int w = 0; w < wellCount; w++) {
-                if (wellGrams[w] < 1.0 || wellGrams[w] + 1.0 > wellSize * wellSize) continue;
-                for (int k = 0; k < K; k++) {
-                    double total = wellGrams[w] + 1.0;
-                    double[] mix = new double[3];
-                    for (int d = 0; d < 3; d++)
-                        mix[d] = (wellColors[w][d] * wellGrams[w] + tubes[k][d]) / total;
-                    double dist = colorDist(mix, targets[t]);
-                    
-                    // 重み調整を適用（操作重み × チューブ重み）
-                    dist /= (operationWeights[1] * tubeWeights[k]);
-                    
-                    if (dist < minDist) {
-                        minDist = dist;
-                        opType = 1;
-                        bestWell = w;
-                        bestTube = k;
-                        for (int d = 0; d < 3; d++) bestColor[d] = mix[d];
-                    }
-                }
+            MixCandidate add = addScratch;
+            add.reset(minDist);
+            evaluateAdding(add, groups, cache, K, capacity, operationWeights, tubeWeights, tr, tg, tb, ledger);
+            if (!hurry) {
+                evaluateTopUp(add, groups, lattice, capacity, operationWeights, tr, tg, tb, opRoom, ledger);
+                evaluateDiscard(add, groups, tubeFlat, K, capacity, D, operationWeights, tubeWeights, tr, tg, tb, opRoom, ledger);
+                evaluateSplit(add, groups, tubeFlat, K, capacity, operationWeights, tubeWeights, tr, tg, tb, opRoom, ledger);
+            }
+            metrics.evaluated(0, directCount);
+            metrics.evaluated(1, add.evaluatedAdd);
+            metrics.evaluated(5, add.evaluatedTopUp);
+            metrics.evaluated(6, add.evaluatedDiscard);
+            metrics.evaluated(7, add.evaluatedSplit);
+            if (add.found) {
+                minDist = add.cost;
+                opType = add.opType;
+                bestWell = add.w1;
+                if (add.opType == 5) bestRecipe = add.tube;
+                else bestTube = add.tube;
+                discardGrams = add.opType == 6 ? add.n : 0;
+                bestColor[0] = add.r; bestColor[1] = add.g; bestColor[2] = add.b;
             }
 
-            // 混合（重み調整適用）
-            for (int w1 = 0; w1 < wellCount; w1++) {
-                if (wellGrams[w1] < 1.0) continue;
-                for (int w2 = 0; w2 < wellCount; w2++) {
-                    if (w1 == w2 || wellGrams[w2] < 1.0) continue;
-                    if (wellGroup[w1] == wellGroup[w2]) continue; // ★同じグループは混合しない
-                    
-                    double total = wellGrams[w1] + wellGrams[w2];
-                    if (total > wellSize * wellSize) continue;
-
-                    boolean isAdjacent = false;
-                    for (int i1 = 0; i1 < wellSize && !isAdjacent; i1++) {
-                        for (int j1 = 0; j1 < wellSize && !isAdjacent; j1++) {
-                            int x1 = wellX[w1] + i1;
-                            int y1 = wellY[w1] + j1;
-                            for (int i2 = 0; i2 < wellSize && !isAdjacent; i2++) {
-                                for (int j2 = 0; j2 < wellSize && !isAdjacent; j2++) {
-                                    int x2 = wellX[w2] + i2;
-                                    int y2 = wellY[w2] + j2;
-                                    if (Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1) {
-                                        isAdjacent = true;
-                                        
-                                        // 混合
-                                        double[] mix = new double[3];
-                                        for (int d = 0; d < 3; d++)
-                                            mix[d] = (wellColors[w1][d] * wellGrams[w1] + wellColors[w2][d] * wellGrams[w2]) / total;
-                                        double dist = colorDist(mix, targets[t]);
-                                        
-                                        // 重み調整を適用
-                                        dist /= operationWeights[2]; // 混合の重み
-                                        
-                                        if (dist < minDist) {
-                                            minDist = dist;
-                                            opType = 2;
-                                            mixW1 = w1; mixW2 = w2;
-                                            mixX1 = x1; mixY1 = y1; mixX2 = x2; mixY2 = y2;
-                                            for (int d = 0; d < 3; d++) bestColor[d] = mix[d];
-                                        }
-
-                                        // 混合＋追加注ぎ
-                                        for (int k = 0; k < K; k++) {
-                                            if (total + 1.0 > wellSize * wellSize) continue;
-                                            double[] mixAdd = new double[3];
-                                            for (int d = 0; d < 3; d++)
-                                                mixAdd[d] = (mix[d] * total + tubes[k][d]) / (total + 1.0);
-                                            double dist2 = colorDist(mixAdd, targets[t]);
-                                            
-                                            // 重み調整を適用（操作重み × チューブ重み）
-                                            dist2 /= (operationWeights[3] * tubeWeights[k]);
-                                            
-                                            if (dist2 < minDist) {
-                                                minDist = dist2;
-                                                opType = 3;
-                                                bestTube = k;
-                                                mixW1 = w1; mixW2 = w2;
-                                                mixX1 = x1; mixY1 = y1; mixX2 = x2; mixY2 = y2;
-                                                for (int d = 0; d < 3; d++) bestColor[d] = mixAdd[d];
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+            // 混合（重み調整適用）：g1の区間ごとに独立なので、候補が多いときは分割して並列評価する
+            groups.flatten(); // 評価中の find が経路圧縮で書き込まないように
+            MixCandidate mix = mixScratch;
+            if (hurry) {
+                mix.reset(minDist);
+            } else {
+                mix = ParallelMix.search(wellCount, (long) wellCount * 4 * (K + 1), minDist, mixScratch,
+                        () -> new MixCandidate(wellCount),
+                        (from, to, best) -> evaluateMixing(from, to, best, groups, cache, adjacency, K, capacity,
+                                operationWeights, tubeWeights, tr, tg, tb, opRoom, ledger));
+            }
+            metrics.evaluated(2, mix.evaluatedMix);
+            metrics.evaluated(3, mix.evaluatedMixAdd);
+            if (mix.found) {
+                minDist = mix.cost;
+                opType = mix.opType;
+                if (mix.opType == 3) bestTube = mix.tube;
+                mixW1 = mix.w1; mixW2 = mix.w2;
+                mixMember = mix.m; mixBorder = mix.n;
+                bestColor[0] = mix.r; bestColor[1] = mix.g; bestColor[2] = mix.b;
             }
 
-            // 空きウェルへの注ぎ込み
-            for (int w = 0; w < wellCount; w++) {
-                if (wellGrams[w] < 1e-8) {
+            // 空きウェルへの注ぎ込み（最初の空きグループのみ：候補色はどの空きウェルでも同じ）
+            for (int g = 0; g < wellCount; g++) {
+                if (groups.isRoot(g) && groupGrams[g] < 1e-8) {
+                    metrics.evaluated(1, K);
                     int bestTubeIdx = 0;
                     double bestTubeDist = Double.MAX_VALUE;
+                    double pourExtra = ledger.cost(0);
                     for (int k = 0; k < K; k++) {
-                        double d = colorDist(tubes[k], targets[t]);
+                        double d = Math.sqrt(sqDist(tubeFlat[k * 3], tubeFlat[k * 3 + 1], tubeFlat[k * 3 + 2], tr, tg, tb));
                         d /= tubeWeights[k]; // チューブ重み適用
                         if (d < bestTubeDist) {
                             bestTubeDist = d;
                             bestTubeIdx = k;
                         }
                     }
+                    bestTubeDist += pourExtra;
                     if (bestTubeDist < minDist) {
                         minDist = bestTubeDist;
                         opType = 1;
-                        bestWell = w;
+                        bestWell = g;
                         bestTube = bestTubeIdx;
-                        for (int d = 0; d < 3; d++) bestColor[d] = tubes[bestTubeIdx][d];
+                        for (int d = 0; d < 3; d++) bestColor[d] = tubeFlat[bestTubeIdx * 3 + d];
+                    }
+
+                    // 到達可能な最寄りの配合（レシピ）を空きウェルに注いで納品（急ぐターンは評価しない）
+                    if (hurry) break;
+                    int e = lattice.nearest(tr, tg, tb);
+                    if (lattice.grams[e] > 1 && lattice.grams[e] + 1 <= opRoom) {
+                        metrics.evaluated(4, 1);
+                        double recipeDist = Math.sqrt(sqDist(lattice.colors[e * 3], lattice.colors[e * 3 + 1], lattice.colors[e * 3 + 2], tr, tg, tb));
+                        recipeDist = recipeDist / operationWeights[4] + ledger.cost(lattice.grams[e] - 1);
+                        if (recipeDist < minDist) {
+                            minDist = recipeDist;
+                            opType = 4;
+                            bestWell = g;
+                            bestRecipe = e;
+                            for (int d = 0; d < 3; d++) bestColor[d] = lattice.colors[e * 3 + d];
+                        }
                     }
+                    break;
                 }
             }
 
@@ -349,174 +330,420 @@ public class Main {
             operationSuccessSum[opType] += (1.0 - Math.min(1.0, actualError)); // 成功度
             operationErrorSum[opType] += actualError;
             
-            if (opType == 1 || opType == 3) { // チューブを使用する操作
+            if (opType == 1 || opType == 3 || opType == 6 || (opType == 7 && bestTube >= 0)) { // チューブを使用する操作
                 tubeCounts[bestTube]++;
                 tubeSuccessSum[bestTube] += actualError;
             }
 
-            // === デバッグ用ウェル状態表示（10ターンごと） ===
-            if (t % 10 == 0 || t < 5) {
-                System.err.println("=== Turn " + t + " ===");
-                System.err.println("Operation: " + opType + " (0:direct, 1:add, 2:mix, 3:mix+add)");
-                System.err.println("Target Error: " + String.format("%.4f", actualError));
-                
-                // ウェルのグラム数表示（5×5グリッド形式）
-                System.err.println("Well Grams:");
-                for (int wy = 0; wy < wellsPerRow; wy++) {
-                    for (int wx = 0; wx < wellsPerRow; wx++) {
-                        int w = wy * wellsPerRow + wx;
-                        System.err.printf("%5.2f ", wellGrams[w]);
-                    }
-                    System.err.println();
-                }
-                
-                // 統計情報
-                int validWells = 0;
-                int emptyWells = 0;
-                double totalGrams = 0.0;
-                double minGrams = Double.MAX_VALUE;
-                double maxGrams = 0.0;
-                
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGrams[w] >= 1.0) validWells++;
-                    if (wellGrams[w] < 0.1) emptyWells++;
-                    totalGrams += wellGrams[w];
-                    if (wellGrams[w] > 0) {
-                        minGrams = Math.min(minGrams, wellGrams[w]);
-                        maxGrams = Math.max(maxGrams, wellGrams[w]);
-                    }
-                }
-                
-                System.err.println("Stats: Valid=" + validWells + " Empty=" + emptyWells + 
-                                 " Total=" + String.format("%.2f", totalGrams) + 
-                                 " Min=" + String.format("%.3f", minGrams == Double.MAX_VALUE ? 0 : minGrams) + 
-                                 " Max=" + String.format("%.2f", maxGrams));
-                System.err.println();
-            }
-
-            // === 正しいグループベースの操作実行 ===
+            // === グループベースの操作実行（Union-Find）：出力は計画に記録し、後処理の後でまとめて書く ===
             if (opType == 0) {
-                System.out.println("2 " + wellX[bestWell] + " " + wellY[bestWell]);
-                
-                // ★同じグループのすべてのウェルからグラム数を減らす
-                int targetGroup = wellGroup[bestWell];
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == targetGroup) {
-                        wellGrams[w] -= 1.0;
-                        if (wellGrams[w] < 1e-9) wellGrams[w] = 0.0;
-                    }
-                }
+                plan.set(t, 0, bestWell, -1, -1);
+                groups.take(groups.find(bestWell));
                 
                 prevWell = bestWell;
                 wellUsed[bestWell]++;
                 
             } else if (opType == 1) {
-                System.out.println("1 " + wellX[bestWell] + " " + wellY[bestWell] + " " + bestTube);
+                plan.set(t, 1, bestWell, bestTube, -1);
+                groups.setColor(bestWell, bestColor);
+                groupGrams[bestWell] += 1.0;
+                groups.touch(bestWell);
+                groups.take(bestWell);
                 
-                // ★同じグループのすべてのウェルの色とグラム数を更新
-                int targetGroup = wellGroup[bestWell];
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == targetGroup) {
-                        for (int d = 0; d < 3; d++) wellColors[w][d] = bestColor[d];
-                        wellGrams[w] += 1.0;
-                    }
-                }
+                prevWell = bestWell;
+                wellUsed[bestWell]++;
                 
-                System.out.println("2 " + wellX[bestWell] + " " + wellY[bestWell]);
+            } else if (opType == 6) {
+                // 捨ててから1g足す（色は捨てても変わらない）
+                plan.set(t, 6, bestWell, bestTube, discardGrams);
+                groups.setColor(bestWell, bestColor);
+                groupGrams[bestWell] += 1.0 - discardGrams;
+                groups.touch(bestWell);
+                groups.take(bestWell);
                 
-                // ★同じグループのすべてのウェルからグラム数を減らす
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == targetGroup) {
-                        wellGrams[w] -= 1.0;
-                        if (wellGrams[w] < 1e-9) wellGrams[w] = 0.0;
-                    }
+                prevWell = bestWell;
+                wellUsed[bestWell]++;
+                
+            } else if (opType == 7) {
+                // 仕切りを戻して半分ずつに分け、代表側で（足してから）納品する
+                plan.set(t, 7, bestWell, bestTube, groups.opened[bestWell]);
+                groups.split(bestWell);
+                if (bestTube >= 0) {
+                    groups.setColor(bestWell, bestColor);
+                    groupGrams[bestWell] += 1.0;
                 }
+                groups.take(bestWell);
                 
                 prevWell = bestWell;
                 wellUsed[bestWell]++;
                 
-            } else if (opType == 2) {
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
+            } else if (opType == 5) {
+                // 配合の各グラムを順に注ぎ足す
+                plan.set(t, 5, bestWell, bestRecipe, -1);
+                groups.setColor(bestWell, bestColor);
+                groupGrams[bestWell] += lattice.grams[bestRecipe];
+                groups.touch(bestWell);
+                groups.take(bestWell);
                 
-                // ★グループ統合処理
-                double originalW1Grams = wellGrams[mixW1];
-                double originalW2Grams = wellGrams[mixW2];
-                int oldGroup = wellGroup[mixW2];
-                int newGroup = wellGroup[mixW1];
+                prevWell = bestWell;
+                wellUsed[bestWell]++;
                 
-                // ★w2のグループをw1のグループに統合
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == oldGroup) {
-                        wellGroup[w] = newGroup;
-                    }
-                }
+            } else if (opType == 4) {
+                // レシピ通りに各チューブを注ぐ（格子の配合）
+                plan.set(t, 4, bestWell, bestRecipe, -1);
+                int recipeGrams = lattice.grams[bestRecipe];
+                groups.setColor(bestWell, bestColor);
+                groupGrams[bestWell] = recipeGrams;
+                groups.touch(bestWell);
+                groups.take(bestWell);
                 
-                double mixedTotalGrams = originalW1Grams + originalW2Grams;
+                prevWell = bestWell;
+                wellUsed[bestWell]++;
                 
-                // ★混合後の色とグラム数を同じグループ全体に設定
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == newGroup) {
-                        for (int d = 0; d < 3; d++) wellColors[w][d] = bestColor[d];
-                        wellGrams[w] = mixedTotalGrams;
-                    }
-                }
+            } else if (opType == 2 || opType == 3) {
+                plan.set(t, opType, mixMember, opType == 3 ? bestTube : -1, mixBorder);
                 
-                System.out.println("2 " + wellX[mixW1] + " " + wellY[mixW1]);
+                // ★グループ統合（色・グラム数は代表に集約）
+                int root = groups.union(mixW1, mixW2, mixMember << 8 | mixBorder);
                 
-                // ★納品後のグラム数を同じグループ全体から減らす
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == newGroup) {
-                        wellGrams[w] -= 1.0;
-                        if (wellGrams[w] < 1e-9) wellGrams[w] = 0.0;
-                    }
+                if (opType == 3) {
+                    groupGrams[root] += 1.0;
                 }
+                groups.setColor(root, bestColor);
+                groups.take(root);
                 
                 prevWell = mixW1;
                 wellUsed[mixW1]++;
-                
-            } else if (opType == 3) {
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
-                
-                // ★グループ統合処理
-                double originalW1Grams = wellGrams[mixW1];
-                double originalW2Grams = wellGrams[mixW2];
-                int oldGroup = wellGroup[mixW2];
-                int newGroup = wellGroup[mixW1];
-                
-                // ★w2のグループをw1のグループに統合
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == oldGroup) {
-                        wellGroup[w] = newGroup;
-                    }
+            }
+            usedOps += plan.ops(t);
+            ledger.commit(plan.pours(t) - (opType == 6 ? discardGrams : 0) - 1);
+            metrics.endTurn(t);
+        }
+        System.err.println("Greedy hurried=" + hurried + " elapsed=" + budget.elapsedNanos() / 1_000_000 + "ms");
+        finish(input, budget, out, metrics, params, plan, initialGroups, adjacency, capacity, lattice, wellX, wellY, params.annealShare() > 0);
+    }
+
+    // --- 縮退：全ターゲットに2操作を残せない T では、T に収まる所まで納品を続ける（納品数は H に届かない）---
+    // 手持ちのあるウェルから最も近い色を1操作で納品し、尽きたら最寄りのチューブを1g注いで納品する
+    static void starve(ProblemInput input, WellGroups groups, int[] wellX, int[] wellY, int budget, OutputSink out) {
+        double[] tubes = input.tubes, targets = input.targets;
+        int used = 0;
+        for (int t = 0; t < input.H; t++) {
+            double tr = targets[t * 3], tg = targets[t * 3 + 1], tb = targets[t * 3 + 2];
+            int best = -1;
+            double bestDist = Double.MAX_VALUE;
+            for (int w = 0; w < wellX.length; w++) {
+                if (groups.grams[w] < 1.0) continue;
+                double d = sqDist(groups.colors[w * 3], groups.colors[w * 3 + 1], groups.colors[w * 3 + 2], tr, tg, tb);
+                if (d < bestDist) {
+                    bestDist = d;
+                    best = w;
                 }
-                
-                System.out.println("1 " + wellX[mixW1] + " " + wellY[mixW1] + " " + bestTube);
-                
-                double mixAddTotalGrams = originalW1Grams + originalW2Grams + 1.0;
-                
-                // ★混合+追加後の色とグラム数を同じグループ全体に設定
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == newGroup) {
-                        for (int d = 0; d < 3; d++) wellColors[w][d] = bestColor[d];
-                        wellGrams[w] = mixAddTotalGrams;
-                    }
+            }
+            if (best < 0) {
+                if (used + 2 > budget) break;
+                int k = 0;
+                for (int i = 1; i < input.K; i++) {
+                    if (sqDist(tubes[i * 3], tubes[i * 3 + 1], tubes[i * 3 + 2], tr, tg, tb)
+                            < sqDist(tubes[k * 3], tubes[k * 3 + 1], tubes[k * 3 + 2], tr, tg, tb)) k = i;
                 }
-                
-                System.out.println("2 " + wellX[mixW1] + " " + wellY[mixW1]);
-                
-                // ★納品後のグラム数を同じグループ全体から減らす
-                for (int w = 0; w < wellCount; w++) {
-                    if (wellGroup[w] == newGroup) {
-                        wellGrams[w] -= 1.0;
-                        if (wellGrams[w] < 1e-9) wellGrams[w] = 0.0;
-                    }
+                best = 0;
+                out.add(wellX[best], wellY[best], k);
+                for (int d = 0; d < 3; d++) groups.colors[best * 3 + d] = tubes[k * 3 + d];
+                groups.grams[best] = 1.0;
+                used++;
+            } else if (used + 1 > budget) {
+                break;
+            }
+            out.deliver(wellX[best], wellY[best]);
+            groups.take(best);
+            used++;
+        }
+        System.err.println("Starved: T=" + input.T + " delivered up to the operation limit");
+    }
+
+    // --- 計画を（anneal なら）焼きなましで改善してから出力する ---
+    // 残り時間が初期計画の再生の見積もりに満たなければ、再生もせずにそのまま出力する
+    static void finish(ProblemInput input, TimeBudget budget, OutputSink out, SolverMetrics metrics, SolverParams params,
+                       OpPlan plan, WellGroups initialGroups, WellAdjacency adjacency, int capacity, MixtureLattice lattice,
+                       int[] wellX, int[] wellY, boolean anneal) {
+        if (anneal && PlanAnnealer.affordable(budget, input.H, wellX.length)) {
+            PlanAnnealer annealer = new PlanAnnealer(input, adjacency, capacity, lattice, initialGroups,
+                    input.T - wellX.length, plan, params);
+            annealer.anneal(budget, 1);
+            System.err.println("Anneal tried=" + annealer.tried + " accepted=" + annealer.accepted
+                    + " elapsed=" + budget.elapsedNanos() / 1_000_000 + "ms");
+        }
+        plan.emit(out, wellX, wellY, adjacency);
+        for (int t = 0; t < input.H; t++) metrics.chosen(t, plan.type[t]);
+        metrics.deliveredFrom(input, out);
+    }
+
+    // --- 追加注ぎの評価（全グループ × K本のチューブ）---
+    // 混ぜた色はキャッシュから読み（版が変わったグループだけ再計算）、
+    // 比較は二乗距離で行い、勝ち得る候補だけ平方根を取る
+    static void evaluateAdding(MixCandidate best, WellGroups groups, CandidateCache cache, int K, int capacity,
+                               double[] operationWeights, double[] tubeWeights, double tr, double tg, double tb,
+                               CostLedger ledger) {
+        double[] groupGrams = groups.grams;
+        double[] addColor = cache.addColors();
+        double extra = ledger.cost(0); // 1g注いで1g納品：手持ちは減らない
+        int wellCount = groupGrams.length;
+        for (int g = 0; g < wellCount; g++) {
+            if (!groups.isRoot(g)) continue;
+            double grams = groupGrams[g];
+            if (grams < 1.0 || grams + 1.0 > capacity) continue;
+            best.evaluatedAdd += K;
+            int base = cache.addOffset(groups, g);
+            for (int k = 0; k < K; k++) {
+                double mr = addColor[base + k * 3];
+                double mg = addColor[base + k * 3 + 1];
+                double mb = addColor[base + k * 3 + 2];
+                double sq = sqDist(mr, mg, mb, tr, tg, tb);
+
+                // 重み調整を適用（操作重み × チューブ重み）
+                double weight = operationWeights[1] * tubeWeights[k];
+                double bound = (best.cost - extra) * weight;
+                if (bound <= 0.0 || sq >= bound * bound) continue;
+                double dist = Math.sqrt(sq) / weight + extra;
+
+                if (dist < best.cost) {
+                    best.setAdd(g, k, mr, mg, mb, dist);
                 }
-                
-                prevWell = mixW1;
-                wellUsed[mixW1]++;
             }
         }
-        sc.close();
+    }
+
+    // --- 注ぎ足しの評価（全グループ × 2〜3g：グラム数ごとに比率表の最寄りの配合を1つ）---
+    // 納品1gを超えて手持ちに残る n-1 g は、収支で確定した廃棄の増分 ledger.cost(n-1) として加える
+    // opRoom : このターンに使える操作数（n g注いで納品する n+1 操作が収まる n まで）
+    static void evaluateTopUp(MixCandidate best, WellGroups groups, MixtureLattice lattice, int capacity,
+                              double[] operationWeights, double tr, double tg, double tb, int opRoom,
+                              CostLedger ledger) {
+        double[] groupGrams = groups.grams, groupColors = groups.colors;
+        double weight = operationWeights[5];
+        for (int g = 0; g < groupGrams.length; g++) {
+            if (!groups.isRoot(g)) continue;
+            double grams = groupGrams[g];
+            if (grams < 1.0) continue;
+            int room = Math.min(Math.min((int) (capacity - grams + 1e-9), MixtureLattice.TOP_UP_MAX_GRAMS), opRoom - 1);
+            double cr = groupColors[g * 3], cg = groupColors[g * 3 + 1], cb = groupColors[g * 3 + 2];
+            for (int n = 2; n <= room; n++) {
+                int e = lattice.topUp(grams, cr, cg, cb, tr, tg, tb, n);
+                if (e < 0) break;
+                best.evaluatedTopUp++;
+                double total = grams + n;
+                double mr = (cr * grams + lattice.colors[e * 3] * n) / total;
+                double mg = (cg * grams + lattice.colors[e * 3 + 1] * n) / total;
+                double mb = (cb * grams + lattice.colors[e * 3 + 2] * n) / total;
+                double dist = Math.sqrt(sqDist(mr, mg, mb, tr, tg, tb)) / weight + ledger.cost(n - 1);
+                if (dist < best.cost) best.setTopUp(g, e, mr, mg, mb, dist);
+            }
+        }
+    }
+
+    // --- 廃棄＋追加注ぎの評価（絵の具の入ったグループ × 捨てる量 j × K本）---
+    // 捨てた j g は注いだのに納品しない量なので D × j を、手持ちが j g 減る分は ledger.cost(-j) を色差の単位で加える
+    // （絵の具のコストは重みで割らない：チューブ・操作の重みは色差の項だけに掛ける）
+    static void evaluateDiscard(MixCandidate best, WellGroups groups, double[] tubes, int K, int capacity, int D,
+                                double[] operationWeights, double[] tubeWeights, double tr, double tg, double tb,
+                                int opRoom, CostLedger ledger) {
+        double[] groupGrams = groups.grams, groupColors = groups.colors;
+        for (int g = 0; g < groupGrams.length; g++) {
+            if (!groups.isRoot(g)) continue;
+            double grams = groupGrams[g];
+            if (grams < 1.0) continue;
+            double cr = groupColors[g * 3], cg = groupColors[g * 3 + 1], cb = groupColors[g * 3 + 2];
+            int held = Math.min((int) (grams + 1e-9), opRoom - 2); // 廃棄 j 回＋注ぐ＋納品
+            for (int j = 1; j <= held; j++) {
+                double keep = grams - j, total = keep + 1.0;
+                double paint = D * j / CostLedger.ERROR_SCALE + ledger.cost(-j); // 捨てた j g ＋ 手持ちが減る分
+                if (paint >= best.cost) continue;
+                best.evaluatedDiscard += K;
+                for (int k = 0; k < K; k++) {
+                    double mr = (cr * keep + tubes[k * 3]) / total;
+                    double mg = (cg * keep + tubes[k * 3 + 1]) / total;
+                    double mb = (cb * keep + tubes[k * 3 + 2]) / total;
+                    double dist = Math.sqrt(sqDist(mr, mg, mb, tr, tg, tb)) / (operationWeights[6] * tubeWeights[k]) + paint;
+                    if (dist < best.cost) best.setDiscardAdd(g, k, j, mr, mg, mb, dist);
+                }
+            }
+        }
+    }
+
+    // --- 分割（＋追加注ぎ）の評価（仕切りを戻せる2ウェルのグループ）---
+    // 半分は同じ色のまま残るので、足さずに納品するときも直接納品と違いウェルの罰は付けない
+    static void evaluateSplit(MixCandidate best, WellGroups groups, double[] tubes, int K, int capacity,
+                              double[] operationWeights, double[] tubeWeights, double tr, double tg, double tb,
+                              int opRoom, CostLedger ledger) {
+        double extra = ledger.cost(0); // 足してから納品するとき（足さなければ直接納品と同じく0）
+        double[] groupGrams = groups.grams, groupColors = groups.colors;
+        for (int g = 0; g < groupGrams.length; g++) {
+            if (!groups.isRoot(g) || !groups.splittable(g) || groupGrams[g] < 2.0) continue;
+            double half = groupGrams[g] * 0.5;
+            double cr = groupColors[g * 3], cg = groupColors[g * 3 + 1], cb = groupColors[g * 3 + 2];
+            best.evaluatedSplit++;
+            double dist = Math.sqrt(sqDist(cr, cg, cb, tr, tg, tb)) / operationWeights[7];
+            if (dist < best.cost) best.setSplit(g, -1, cr, cg, cb, dist);
+            if (half + 1.0 > capacity || opRoom < 3) continue;
+            best.evaluatedSplit += K;
+            for (int k = 0; k < K; k++) {
+                double mr = (cr * half + tubes[k * 3]) / (half + 1.0);
+                double mg = (cg * half + tubes[k * 3 + 1]) / (half + 1.0);
+                double mb = (cb * half + tubes[k * 3 + 2]) / (half + 1.0);
+                double d = Math.sqrt(sqDist(mr, mg, mb, tr, tg, tb)) / (operationWeights[7] * tubeWeights[k]) + extra;
+                if (d < best.cost) best.setSplit(g, k, mr, mg, mb, d);
+            }
+        }
+    }
+
+    // --- 混合・混合＋追加注ぎの評価（g1 ∈ [from, to)）---
+    // グループの全メンバーの隣接ウェルから隣接グループを列挙し、グループ対 (g1, g2) は g1 < g2 の向きで1回だけ評価する
+    static void evaluateMixing(int from, int to, MixCandidate best, WellGroups groups, CandidateCache cache,
+                               WellAdjacency adjacency, int K, int capacity, double[] operationWeights,
+                               double[] tubeWeights, double tr, double tg, double tb, int opRoom,
+                               CostLedger ledger) {
+        double[] groupGrams = groups.grams;
+        double extra = ledger.cost(0); // 混合＋追加注ぎ（混合だけなら直接納品と同じく0）
+        double[] pairColor = cache.pairColors();
+        double[] pairAddColor = cache.pairAddColors();
+        int[] pairSeen = best.pairSeen;
+        for (int g1 = from; g1 < to; g1++) {
+            if (!groups.isRoot(g1) || groupGrams[g1] < 1.0) continue;
+            int pairStamp = ++best.pairStamp;
+            int m = g1;
+            do {
+                int[] nb = adjacency.neighbors[m];
+                for (int n = 0; n < nb.length; n++) {
+                    int g2 = groups.find(nb[n]);
+                    if (g2 <= g1 || pairSeen[g2] == pairStamp) continue; // ★同じグループ・評価済みは除外
+                    pairSeen[g2] = pairStamp;
+                    if (groupGrams[g2] < 1.0) continue;
+                    
+                    double grams1 = groupGrams[g1], grams2 = groupGrams[g2];
+                    double total = grams1 + grams2;
+                    if (total > capacity) continue;
+                    best.evaluatedMix++;
+                    boolean withAdd = total + 1.0 <= capacity;
+                    int slot = cache.pairSlot(groups, m, n, g1, g2, withAdd);
+
+                    // 混合（重み付き和 → 平均）
+                    double mr = pairColor[slot * 3], mg = pairColor[slot * 3 + 1], mb = pairColor[slot * 3 + 2];
+                    double sq = sqDist(mr, mg, mb, tr, tg, tb);
+                    
+                    // 重み調整を適用
+                    double bound = best.cost * operationWeights[2]; // 混合の重み
+                    if (sq < bound * bound) {
+                        double dist = Math.sqrt(sq) / operationWeights[2];
+                        if (dist < best.cost) {
+                            best.set(2, -1, g1, g2, m, n, mr, mg, mb, dist);
+                        }
+                    }
+
+                    // 混合＋追加注ぎ（仕切り＋注ぐ＋納品の3操作）
+                    if (!withAdd || opRoom < 3) continue;
+                    best.evaluatedMixAdd += K;
+                    int base = slot * K * 3;
+                    for (int k = 0; k < K; k++) {
+                        double ar = pairAddColor[base + k * 3];
+                        double ag = pairAddColor[base + k * 3 + 1];
+                        double ab = pairAddColor[base + k * 3 + 2];
+                        double sq2 = sqDist(ar, ag, ab, tr, tg, tb);
+                        
+                        // 重み調整を適用（操作重み × チューブ重み）
+                        double weight = operationWeights[3] * tubeWeights[k];
+                        double bound2 = (best.cost - extra) * weight;
+                        if (bound2 <= 0.0 || sq2 >= bound2 * bound2) continue;
+                        double dist2 = Math.sqrt(sq2) / weight + extra;
+                        
+                        if (dist2 < best.cost) {
+                            best.set(3, k, g1, g2, m, n, ar, ag, ab, dist2);
+                        }
+                    }
+                }
+                m = groups.next[m];
+            } while (m != g1);
+        }
+    }
+
+    // 混合候補（区間ごとの最良）：重複除去スタンプも区間ごとに持つ（追加注ぎの最良候補にも使う）
+    static final class MixCandidate extends ParallelMix.Best {
+        final int[] pairSeen;
+        int pairStamp;
+        int opType, tube, w1, w2, m, n; // 混合は g1 のメンバー m の n 番目の隣接ウェルとの仕切りを外す
+        double r, g, b;
+        long evaluatedAdd, evaluatedMix, evaluatedMixAdd, evaluatedTopUp, evaluatedDiscard, evaluatedSplit; // 評価した候補数（計測用）
+
+        MixCandidate(int wellCount) {
+            pairSeen = new int[wellCount];
+        }
+
+        @Override
+        void reset(double bound) {
+            super.reset(bound);
+            evaluatedAdd = evaluatedMix = evaluatedMixAdd = evaluatedTopUp = evaluatedDiscard = evaluatedSplit = 0;
+        }
+
+        @Override
+        void absorb(ParallelMix.Best other) {
+            MixCandidate o = (MixCandidate) other;
+            evaluatedAdd += o.evaluatedAdd;
+            evaluatedMix += o.evaluatedMix;
+            evaluatedMixAdd += o.evaluatedMixAdd;
+            evaluatedTopUp += o.evaluatedTopUp;
+            evaluatedDiscard += o.evaluatedDiscard;
+            evaluatedSplit += o.evaluatedSplit;
+        }
+
+        void set(int opType, int tube, int w1, int w2, int m, int n, double r, double g, double b, double cost) {
+            this.opType = opType;
+            this.tube = tube;
+            this.w1 = w1;
+            this.w2 = w2;
+            this.m = m;
+            this.n = n;
+            this.r = r; this.g = g; this.b = b;
+            this.cost = cost;
+            found = true;
+        }
+
+        void setAdd(int well, int tube, double r, double g, double b, double cost) {
+            setAdd(1, well, tube, r, g, b, cost);
+        }
+
+        // 注ぎ足し：tube に配合番号を入れる
+        void setTopUp(int well, int recipe, double r, double g, double b, double cost) {
+            setAdd(5, well, recipe, r, g, b, cost);
+        }
+
+        // 廃棄＋追加注ぎ：n に捨てるグラム数を入れる
+        void setDiscardAdd(int well, int tube, int grams, double r, double g, double b, double cost) {
+            setAdd(6, well, tube, r, g, b, cost);
+            this.n = grams;
+        }
+
+        // 分割（＋追加注ぎ）：足さないときは tube = -1
+        void setSplit(int well, int tube, double r, double g, double b, double cost) {
+            setAdd(7, well, tube, r, g, b, cost);
+        }
+
+        private void setAdd(int opType, int well, int tube, double r, double g, double b, double cost) {
+            this.opType = opType;
+            this.tube = tube;
+            this.w1 = well;
+            this.w2 = -1;
+            this.r = r; this.g = g; this.b = b;
+            this.cost = cost;
+            found = true;
+        }
+    }
+
+    // --- 二乗距離（比較用：平方根を取らない）---
+    static double sqDist(double r1, double g1, double b1, double r2, double g2, double b2) {
+        double dr = r1 - r2;
+        double dg = g1 - g2;
+        double db = b1 - b2;
+        return dr * dr + dg * dg + db * db;
     }
 
     // --- RGBユークリッド距離での色差計算 ---
@@ -17,34 +17,24 @@
  *    - 容量オーバーを防ぐ厳密なチェック
  *    - フォールバック処理で必ず操作を実行
  */
-import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
 
 public class Main {
 
     public static void main(String[] args) {
-        Scanner sc = new Scanner(System.in);
-        int N = sc.nextInt(); // パレットの一辺(20 固定)
-        int K = sc.nextInt(); // 絵の具の種類数
-        int H = sc.nextInt(); // ターゲット色の数(1000 固定)
-        int T = sc.nextInt(); // 最大ターン数（未使用）
-        int D = sc.nextInt(); // 1グラム出すコストD（未使用）
+        ProblemInput input = ProblemInput.read(System.in); // 標準入力を一括で読み込み
+        OutputSink out = new OutputSink(1 << 16); // 出力バッファ（終了時に一括出力）
+        int N = input.N; // パレットの一辺(20 固定)
+        int K = input.K; // 絵の具の種類数
+        int H = input.H; // ターゲット色の数(1000 固定)
+        int T = input.T; // 最大ターン数（未使用）
+        int D = input.D; // 1グラム出すコストD（未使用）
 
-        // 絵の具の色（各RGB成分）を読み込み
-        double[][] tubes = new double[K][3];
-        for (int i = 0; i < K; i++) {
-            tubes[i][0] = sc.nextDouble();
-            tubes[i][1] = sc.nextDouble();
-            tubes[i][2] = sc.nextDouble();
-        }
-        // ターゲット色を読み込み
-        double[][] targets = new double[H][3];
-        for (int i = 0; i < H; i++) {
-            targets[i][0] = sc.nextDouble();
-            targets[i][1] = sc.nextDouble();
-            targets[i][2] = sc.nextDouble();
-        }
+        // 絵の具の色（各RGB成分）
+        double[][] tubes = input.tubeRows();
+        // ターゲット色
+        double[][] targets = input.targetRows();
 
         // --- パレットを5×5のウェルに分割（wellSize=4, N=20で25個） ---
         int wellSize = 2; // 1ウェルの一辺の長さ
@@ -54,17 +44,13 @@ public class Main {
         // --- 仕切り出力（5×5分割）---
         for (int i = 0; i < N; i++) {
             for (int j = 0; j < N - 1; j++) {
-                System.out.print(((j + 1) % wellSize == 0) ? "1" : "0");
-                if (j < N - 2) System.out.print(" ");
+                out.wall((j + 1) % wellSize == 0, j == N - 2);
             }
-            System.out.println();
         }
         for (int i = 0; i < N - 1; i++) {
             for (int j = 0; j < N; j++) {
-                System.out.print(((i + 1) % wellSize == 0) ? "1" : "0");
-                if (j < N - 1) System.out.print(" ");
+                out.wall((i + 1) % wellSize == 0, j == N - 1);
             }
-            System.out.println();
         }
 
         // --- 各ウェルの初期化 ---
@@ -80,7 +66,7 @@ public class Main {
                 int x = wx * wellSize;
                 int y = wy * wellSize;
                 int tubeIdx = idx % K;
-                System.out.println("1 " + x + " " + y + " " + tubeIdx);
+                out.add(x, y, tubeIdx);
                 for (int d = 0; d < 3; d++) wellColors[idx][d] = tubes[tubeIdx][d];
                 wellX[idx] = x;
                 wellY[idx] = y;
@@ -311,7 +297,7 @@ public class Main {
             double[] deliveredColor = new double[3]; // 実際に納品される色
             
             if (opType == 0) {
-                System.out.println("2 " + wellX[bestWell] + " " + wellY[bestWell]);
+                out.deliver(wellX[bestWell], wellY[bestWell]);
                 
                 // 実際に納品される色を保存
                 for (int d = 0; d < 3; d++) deliveredColor[d] = wellColors[bestWell][d];
@@ -328,7 +314,7 @@ public class Main {
                 prevWell = bestWell;
                 wellUsed[bestWell]++;
             } else if (opType == 1) {
-                System.out.println("1 " + wellX[bestWell] + " " + wellY[bestWell] + " " + bestTube);
+                out.add(wellX[bestWell], wellY[bestWell], bestTube);
                 
                 // ★残り容量を考慮した実際の追加量を計算
                 double wellCapacity = wellSize * wellSize;
@@ -347,7 +333,7 @@ public class Main {
                     }
                 }
                 
-                System.out.println("2 " + wellX[bestWell] + " " + wellY[bestWell]);
+                out.deliver(wellX[bestWell], wellY[bestWell]);
                 
                 // ★同じグループのすべてのウェルからグラム数を減らす
                 for (int w = 0; w < wellCount; w++) {
@@ -360,7 +346,7 @@ public class Main {
                 prevWell = bestWell;
                 wellUsed[bestWell]++;
             } else if (opType == 2) {
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
+                out.toggle(mixX1, mixY1, mixX2, mixY2);
                 
                 // ★グループ統合処理
                 double originalW1Grams = wellGrams[mixW1];
@@ -393,7 +379,7 @@ public class Main {
                 
                 // ★混合後に1g以上あるかチェックして納品
                 if (mixedTotalGrams >= 1.0000001) {
-                    System.out.println("2 " + wellX[mixW1] + " " + wellY[mixW1]);
+                    out.deliver(wellX[mixW1], wellY[mixW1]);
                     
                     // 実際に納品される色を保存
                     for (int d = 0; d < 3; d++) deliveredColor[d] = mixedColor[d];
@@ -414,7 +400,7 @@ public class Main {
                 }
                 
                 // ★必ず仕切り入れ直し（分割処理付き）
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
+                out.toggle(mixX1, mixY1, mixX2, mixY2);
                 
                 // ★仕切り操作によりウェルが分割される場合の処理
                 if (wellGrams[mixW1] > 0) { // グラム数がある場合のみ分割
@@ -439,7 +425,7 @@ public class Main {
                     }
                 }
             } else if (opType == 3) {
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
+                out.toggle(mixX1, mixY1, mixX2, mixY2);
                 
                 // ★グループ統合処理
                 double originalW1Grams = wellGrams[mixW1];
@@ -454,7 +440,7 @@ public class Main {
                     }
                 }
                 
-                System.out.println("1 " + wellX[mixW1] + " " + wellY[mixW1] + " " + bestTube);
+                out.add(wellX[mixW1], wellY[mixW1], bestTube);
                 
                 // ★残り容量を考慮した実際の追加量を計算
                 double mixedGrams = originalW1Grams + originalW2Grams;
@@ -481,7 +467,7 @@ public class Main {
                 
                 // ★混合+追加後に1g以上あるかチェックして納品（通常は必ず1g以上になるはず）
                 if (mixAddTotalGrams >= 1.0000001) {
-                    System.out.println("2 " + wellX[mixW1] + " " + wellY[mixW1]);
+                    out.deliver(wellX[mixW1], wellY[mixW1]);
                     
                     // 実際に納品される色を保存
                     for (int d = 0; d < 3; d++) deliveredColor[d] = mixAddColor[d];
@@ -502,7 +488,7 @@ public class Main {
                 }
                 
                 // ★必ず仕切り入れ直し（分割処理付き）
-                System.out.println("4 " + mixX1 + " " + mixY1 + " " + mixX2 + " " + mixY2);
+                out.toggle(mixX1, mixY1, mixX2, mixY2);
                 
                 // ★仕切り操作によりウェルが分割される場合の処理
                 if (wellGrams[mixW1] > 0) { // グラム数がある場合のみ分割
@@ -530,7 +516,7 @@ public class Main {
             double realError = colorDist(deliveredColor, targets[t]);
             System.err.println("Turn " + (t + 1) + " Error: " + String.format("%.6f", realError));
         }
-        sc.close();
+        out.flush();
     }
 
     // --- RGBユークリッド距離での色差計算 ---
@@ -0,0 +1,164 @@
+/**
+ * 混色格子インデックス
+ * K本のチューブから合計C g以下で作れる全ての整数配合（重複組合せ）を起動時に列挙し、
+ * 色空間[0,1]³を一様グリッドに分割したバケットへ格納する。
+ * 任意の色に対し、最も近い到達可能色とそのレシピをグリッドの殻探索で求める。
+ *  - colors[e*3 + d] : 配合eの色
+ *  - grams[e]        : 配合eの総グラム数（1〜maxGrams）
+ *  - codes[e]        : 配合eのチューブ番号列（1gごとに5bit、昇順）
+ * 配合は総グラム数の昇順に並ぶため、同じ距離なら少ない量のレシピが優先される。
+ * 既に絵の具が入ったウェルへの注ぎ足し（topUp）では、グラム数を固定した配合を比率表として引く。
+ */
+final class MixtureLattice {
+
+    private static final int RES = 32;      // 1軸あたりのグリッド分割数
+    private static final int BITS = 5;      // チューブ番号のビット幅（K ≤ 32）
+    static final int MAX_GRAMS = 12;        // 64bitに詰められる最大グラム数
+    static final int TOP_UP_MAX_GRAMS = 3;  // 注ぎ足しの最大グラム数（使うチューブは3本まで）
+
+    final int K, maxGrams, size;
+    final double[] colors;
+    final int[] grams;
+    final long[] codes;
+
+    private final int[] cellStart; // RES³+1
+    private final int[] cellItems; // 配合番号（セル順）
+
+    private MixtureLattice(int K, int maxGrams, int size) {
+        this.K = K;
+        this.maxGrams = maxGrams;
+        this.size = size;
+        colors = new double[size * 3];
+        grams = new int[size];
+        codes = new long[size];
+        cellStart = new int[RES * RES * RES + 1];
+        cellItems = new int[size];
+    }
+
+    // --- 合計c g以下の配合数 = C(K+c, c) - 1 ---
+    static long count(int K, int maxGrams) {
+        long n = 1;
+        for (int i = 1; i <= maxGrams; i++) n = n * (K + i) / i;
+        return n - 1;
+    }
+
+    // --- 配合数がlimit以下に収まる最大のグラム数（capacityで頭打ち）---
+    static int gramsWithin(int K, int capacity, long limit) {
+        int c = 0;
+        while (c < Math.min(capacity, MAX_GRAMS) && count(K, c + 1) <= limit) c++;
+        return c;
+    }
+
+    static MixtureLattice build(double[] tubes, int K, int maxGrams) {
+        MixtureLattice lat = new MixtureLattice(K, maxGrams, (int) count(K, maxGrams));
+        int[] seq = new int[maxGrams];
+        int e = 0;
+        for (int c = 1; c <= maxGrams; c++) {
+            // 非減少列 seq[0..c-1] を辞書順に列挙
+            java.util.Arrays.fill(seq, 0, c, 0);
+            while (true) {
+                double sr = 0, sg = 0, sb = 0;
+                long code = 0;
+                for (int i = 0; i < c; i++) {
+                    int k = seq[i];
+                    sr += tubes[k * 3];
+                    sg += tubes[k * 3 + 1];
+                    sb += tubes[k * 3 + 2];
+                    code |= (long) k << (BITS * i);
+                }
+                lat.colors[e * 3] = sr / c;
+                lat.colors[e * 3 + 1] = sg / c;
+                lat.colors[e * 3 + 2] = sb / c;
+                lat.grams[e] = c;
+                lat.codes[e] = code;
+                e++;
+
+                int i = c - 1;
+                while (i >= 0 && seq[i] == K - 1) i--;
+                if (i < 0) break;
+                seq[i]++;
+                for (int j = i + 1; j < c; j++) seq[j] = seq[i];
+            }
+        }
+
+        // バケット（CSR形式）
+        int[] cellOf = new int[lat.size];
+        for (int i = 0; i < lat.size; i++) {
+            cellOf[i] = cell(lat.colors[i * 3], lat.colors[i * 3 + 1], lat.colors[i * 3 + 2]);
+            lat.cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < RES * RES * RES; c++) lat.cellStart[c + 1] += lat.cellStart[c];
+        int[] fill = java.util.Arrays.copyOf(lat.cellStart, RES * RES * RES);
+        for (int i = 0; i < lat.size; i++) lat.cellItems[fill[cellOf[i]]++] = i;
+        return lat;
+    }
+
+    // --- 最も近い配合の番号を返す（同距離なら番号の小さい＝少量の配合）---
+    int nearest(double r, double g, double b) {
+        return nearest(r, g, b, 0);
+    }
+
+    // --- グループ（grams g、色 c）にnグラム注ぎ足してターゲットに最も近づく配合（無ければ -1）---
+    // 混ぜた色 (G·c + n·x) / (G + n) がターゲットになる理想の配合色 x = t + (G / n)(t − c) の最寄りを引く
+    int topUp(double grams, double cr, double cg, double cb, double tr, double tg, double tb, int n) {
+        if (n < 1 || n > maxGrams) return -1;
+        double f = grams / n;
+        return nearest(tr + f * (tr - cr), tg + f * (tg - cg), tb + f * (tb - cb), n);
+    }
+
+    // n > 0 ならグラム数がちょうどnの配合だけを対象にする
+    private int nearest(double r, double g, double b, int n) {
+        int cx = axis(r), cy = axis(g), cz = axis(b);
+        int best = -1;
+        double bestSq = Double.MAX_VALUE;
+        for (int rad = 0; rad < RES; rad++) {
+            // 殻radの点は少なくとも (rad-1)/RES 離れている
+            double gap = (rad - 1) / (double) RES;
+            if (rad > 0 && gap > 0 && gap * gap > bestSq) break;
+            for (int x = cx - rad; x <= cx + rad; x++) {
+                if (x < 0 || x >= RES) continue;
+                boolean edgeX = x == cx - rad || x == cx + rad;
+                for (int y = cy - rad; y <= cy + rad; y++) {
+                    if (y < 0 || y >= RES) continue;
+                    boolean edgeXY = edgeX || y == cy - rad || y == cy + rad;
+                    for (int z = cz - rad; z <= cz + rad; z++) {
+                        if (z < 0 || z >= RES) continue;
+                        // 殻の表面だけを走査
+                        if (!edgeXY && z != cz - rad && z != cz + rad) {
+                            z = cz + rad - 1;
+                            continue;
+                        }
+                        int c = (x * RES + y) * RES + z;
+                        for (int p = cellStart[c]; p < cellStart[c + 1]; p++) {
+                            int e = cellItems[p];
+                            if (n > 0 && grams[e] != n) continue;
+                            double dr = colors[e * 3] - r;
+                            double dg = colors[e * 3 + 1] - g;
+                            double db = colors[e * 3 + 2] - b;
+                            double sq = dr * dr + dg * dg + db * db;
+                            if (sq < bestSq || (sq == bestSq && e < best)) {
+                                bestSq = sq;
+                                best = e;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // 配合eのi番目のグラムに使うチューブ番号
+    int tubeAt(int e, int i) {
+        return (int) (codes[e] >>> (BITS * i)) & ((1 << BITS) - 1);
+    }
+
+    private static int axis(double v) {
+        int a = (int) (v * RES);
+        return a < 0 ? 0 : (a >= RES ? RES - 1 : a);
+    }
+
+    private static int cell(double r, double g, double b) {
+        return (axis(r) * RES + axis(g)) * RES + axis(b);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * 操作計画（ターゲットごとに1つの操作）
+ * 貪欲法・ビームサーチが決めた操作を出力前に保持し、後処理（PlanAnnealer）で書き換えてから出力する。
+ * 操作の表し方は BeamSearch の履歴と同じ：
+ *  - 0: そのまま納品      well = 納品するメンバー
+ *  - 1: 追加注ぎ＋納品    well = グループ代表（空きウェルも含む）, arg = チューブ
+ *  - 2: 混合＋納品        well = g1 のメンバー m, aux = m の隣接ウェル番号 n（境界は adjacency.borders[m]）
+ *  - 3: 混合＋追加注ぎ    2 と同じ＋ arg = チューブ
+ *  - 4: レシピ注ぎ＋納品  well = 空きグループ代表, arg = 格子の配合番号
+ *  - 5: 注ぎ足し＋納品    well = 絵の具の入ったグループ代表, arg = 格子の配合番号（2〜3g を1gずつ注ぐ）
+ *  - 6: 廃棄＋追加注ぎ＋納品 well = グループ代表, arg = チューブ, aux = 廃棄するグラム数
+ *  - 7: 分割（＋追加注ぎ）＋納品 well = 納品する側のウェル, arg = チューブ（-1 なら注がない）,
+ *       aux = 戻す仕切りの辺番号 m << 8 | n（WellGroups.opened、境界は adjacency.borders[m]）
+ */
+final class OpPlan {
+
+    final int H, K;
+    final int[] type, well, arg, aux;
+    private final MixtureLattice lattice;
+
+    OpPlan(int H, int K, MixtureLattice lattice) {
+        this.H = H;
+        this.K = K;
+        this.lattice = lattice;
+        type = new int[H];
+        well = new int[H];
+        arg = new int[H];
+        aux = new int[H];
+    }
+
+    void set(int t, int type, int well, int arg, int aux) {
+        this.type[t] = type;
+        this.well[t] = well;
+        this.arg[t] = arg;
+        this.aux[t] = aux;
+    }
+
+    // --- ターンtで注ぐグラム数 ---
+    int pours(int t) {
+        return pours(t, type[t], arg[t]);
+    }
+
+    int pours(int t, int type, int arg) {
+        if (type == 1 || type == 3 || type == 6) return 1;
+        if (type == 7) return arg >= 0 ? 1 : 0;
+        if (type == 4 || type == 5) return lattice.grams[arg];
+        return 0;
+    }
+
+    // --- ターンtの操作数（注ぎ＋仕切り・廃棄＋納品）---
+    int ops(int t) {
+        return ops(t, type[t], arg[t], aux[t]);
+    }
+
+    int ops(int t, int type, int arg, int aux) {
+        return pours(t, type, arg) + (type == 2 || type == 3 || type == 7 ? 2 : type == 6 ? 1 + aux : 1);
+    }
+
+    // --- 計画どおりに操作列を出力する ---
+    void emit(OutputSink out, int[] wellX, int[] wellY, WellAdjacency adjacency) {
+        for (int t = 0; t < H; t++) {
+            int w = well[t];
+            int ty = type[t];
+            if (ty == 1) {
+                out.add(wellX[w], wellY[w], arg[t]);
+            } else if (ty == 7) {
+                int[] bd = adjacency.borders[aux[t] >> 8];
+                int n = aux[t] & 255;
+                out.toggle(bd[n * 4], bd[n * 4 + 1], bd[n * 4 + 2], bd[n * 4 + 3]);
+                if (arg[t] >= 0) out.add(wellX[w], wellY[w], arg[t]);
+            } else if (ty == 6) {
+                for (int i = 0; i < aux[t]; i++) out.discard(wellX[w], wellY[w]);
+                out.add(wellX[w], wellY[w], arg[t]);
+            } else if (ty == 4 || ty == 5) {
+                int e = arg[t];
+                for (int i = 0; i < lattice.grams[e]; i++) out.add(wellX[w], wellY[w], lattice.tubeAt(e, i));
+            } else if (ty == 2 || ty == 3) {
+                int[] bd = adjacency.borders[w];
+                int n = aux[t];
+                out.toggle(bd[n * 4], bd[n * 4 + 1], bd[n * 4 + 2], bd[n * 4 + 3]);
+                if (ty == 3) out.add(wellX[w], wellY[w], arg[t]);
+            }
+            out.deliver(wellX[w], wellY[w]);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * 操作数（T）の配分
+ * 初期の注ぎ（ウェル数）を除いた budget = T − wellCount 回を H 個のターゲットに配る。
+ *  - 予約：まだ処理していないターゲットに RESERVE（注ぐ＋納品の2操作）ずつ残す。
+ *    どのターンでも予約を守れば、残りは「1g注いで納品」だけで必ず最後まで進める
+ *  - limit(t)       : ターン t を終えた時点で使ってよい累計の操作数（budget − 以降の予約）
+ *  - price(t, used) : 予約を超える余剰を、これまでのペースで使い続けると足りなくなるときだけ
+ *                     1操作あたりの値段（色差の単位）を付ける。余裕があれば0で、操作数は従来どおり無料
+ *    → 値段が付くと、納品1回で済む候補や注ぐ量の少ない候補が相対的に有利になり、
+ *      余剰は色差が大きく縮むターゲット（注ぎ足し・廃棄＋追加などが大きく勝つ所）にだけ回る
+ *  - budget < RESERVE × H（初期の注ぎを除いて全ターゲットを納品できない）は fits() が false を返す
+ */
+final class OpScheduler {
+
+    static final int RESERVE = 2;
+    static final double MAX_PRESSURE = 4.0; // 値段の上限（opPrice の倍数）
+
+    final int budget, H;
+    private final double opPrice;
+
+    OpScheduler(int budget, int H, double opPrice) {
+        this.budget = budget;
+        this.H = H;
+        this.opPrice = opPrice;
+    }
+
+    static boolean fits(int T, int H, int wellCount) {
+        return T - wellCount >= RESERVE * H;
+    }
+
+    // ターン t を終えた時点の累計操作数の上限
+    int limit(int t) {
+        return budget - RESERVE * (H - t - 1);
+    }
+
+    // ターン t の開始時点で累計 used 操作を使っているときの1操作の値段
+    double price(int t, int used) {
+        if (t == 0 || opPrice <= 0.0) return 0.0;
+        int spare = budget - used - RESERVE * (H - t);
+        double pace = (double) (used - RESERVE * t) / t; // 1ターゲットあたり予約を超えて使った量
+        double need = pace * (H - t);
+        if (need <= spare) return 0.0;
+        if (spare <= 0) return opPrice * MAX_PRESSURE;
+        return opPrice * Math.min(MAX_PRESSURE, need / spare - 1.0);
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.PrintStream;
+
+/**
+ * 出力バッファ（Main / Main2 / nextMain 共通）
+ * 仕切りグリッドと操作列を事前確保したバイト配列へ直接書き込み、
+ * 終了時に flush() で一度だけ書き出す。
+ * 整数は文字列を経由せず桁を直接書き込むため、1行ごとのアロケーションは発生しない。
+ */
+final class OutputSink {
+
+    private byte[] buf;
+    private int pos;
+
+    OutputSink(int capacity) {
+        buf = new byte[Math.max(capacity, 64)];
+    }
+
+    // --- 仕切りグリッド: 1マス分の0/1と区切り（行末は改行）---
+    void wall(boolean on, boolean last) {
+        ensure(2);
+        buf[pos++] = (byte) (on ? '1' : '0');
+        buf[pos++] = (byte) (last ? '\n' : ' ');
+    }
+
+    // --- 操作1: チューブkから(x, y)に1g追加 ---
+    void add(int x, int y, int k) {
+        ensure(40);
+        buf[pos++] = '1';
+        sp(x);
+        sp(y);
+        sp(k);
+        buf[pos++] = '\n';
+    }
+
+    // --- 操作2: (x, y)から1g納品 ---
+    void deliver(int x, int y) {
+        ensure(30);
+        buf[pos++] = '2';
+        sp(x);
+        sp(y);
+        buf[pos++] = '\n';
+    }
+
+    // --- 操作3: (x, y)から1g廃棄 ---
+    void discard(int x, int y) {
+        ensure(30);
+        buf[pos++] = '3';
+        sp(x);
+        sp(y);
+        buf[pos++] = '\n';
+    }
+
+    // --- 操作4: (x1, y1)-(x2, y2)間の仕切りの出し入れ ---
+    void toggle(int x1, int y1, int x2, int y2) {
+        ensure(60);
+        buf[pos++] = '4';
+        sp(x1);
+        sp(y1);
+        sp(x2);
+        sp(y2);
+        buf[pos++] = '\n';
+    }
+
+    int size() {
+        return pos;
+    }
+
+    // --- バッファの内容を書き出して空にする ---
+    void flush(PrintStream out) {
+        out.write(buf, 0, pos);
+        out.flush();
+        pos = 0;
+    }
+
+    void flush() {
+        flush(System.out);
+    }
+
+    // --- バッファの内容をコピーして返す（バッチ実行でのメモリ内採点用）---
+    byte[] toByteArray() {
+        return java.util.Arrays.copyOf(buf, pos);
+    }
+
+    // 空白＋非負整数（呼び出し側でensure済み）
+    private void sp(int v) {
+        buf[pos++] = ' ';
+        if (v < 10) {
+            buf[pos++] = (byte) ('0' + v);
+            return;
+        }
+        int start = pos;
+        while (v > 0) {
+            buf[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte tmp = buf[i];
+            buf[i] = buf[j];
+            buf[j] = tmp;
+        }
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = java.util.Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * パレットのレイアウト（正方形ウェルの格子）
+ * 一辺 wellSize のウェルを左上から perRow × perRow 個並べ、残りのマスは使わない。
+ *  - 仕切りは「隣り合うマスの持ち主（ウェル番号、未使用は -1）が違う」所にだけ立てる
+ *    → 未使用のマスは仕切りで閉じ、どのウェルともつながらない（どの操作も使わない）
+ *  - 全ウェルの容量は同じ（capacity = wellSize²）：解法の状態（WellGroups など）が容量を1つしか持たないため
+ * 使うレイアウトは choose() で決め（既定は全面の2×2格子）、Main が出力する。
+ */
+final class PaletteLayout {
+
+    final int N, wellSize, perRow, wellCount, capacity;
+    final int[] wellX, wellY; // 各ウェルの左上
+    final WellAdjacency adjacency;
+    private final int[] owner; // owner[x*N + y] : マスを含むウェル（未使用は -1）
+
+    private PaletteLayout(int N, int wellSize, int perRow) {
+        this.N = N;
+        this.wellSize = wellSize;
+        this.perRow = perRow;
+        this.wellCount = perRow * perRow;
+        this.capacity = wellSize * wellSize;
+        wellX = new int[wellCount];
+        wellY = new int[wellCount];
+        owner = new int[N * N];
+        java.util.Arrays.fill(owner, -1);
+        int idx = 0;
+        for (int wy = 0; wy < perRow; wy++) {
+            for (int wx = 0; wx < perRow; wx++) {
+                wellX[idx] = wx * wellSize;
+                wellY[idx] = wy * wellSize;
+                for (int i = 0; i < wellSize; i++) {
+                    for (int j = 0; j < wellSize; j++) owner[(wellX[idx] + i) * N + wellY[idx] + j] = idx;
+                }
+                idx++;
+            }
+        }
+        adjacency = WellAdjacency.build(wellX, wellY, wellSize);
+    }
+
+    static PaletteLayout grid(int N, int wellSize, int perRow) {
+        if (wellSize < 1 || perRow < 1 || wellSize * perRow > N) {
+            throw new IllegalArgumentException("Layout does not fit: " + wellSize + "x" + perRow);
+        }
+        return new PaletteLayout(N, wellSize, perRow);
+    }
+
+    // --- 使うレイアウト：-Dlayout=2x10 の指定、なければ一辺2で T に収まる最大の列数 ---
+    // 一辺2の 10/9/8 列を tools/in 0-29 で全ケース固定して比べると、合計は 10列が最小で、
+    // D の大きいケースでも列数を減らすと悪化した（従来の D による場合分けは使わない）
+    static PaletteLayout choose(ProblemInput input) {
+        String fixed = System.getProperty("layout");
+        if (fixed != null) return parse(input.N, fixed);
+        int size = 2;
+        int perRow = input.N / size;
+        // 各ターゲットに最低2操作を残せないときは、残せる所まで列数を減らす（最低1ウェル）
+        while (perRow > 1 && !OpScheduler.fits(input.T, input.H, perRow * perRow)) perRow--;
+        return grid(input.N, size, perRow);
+    }
+
+    // "2x10" のような指定（一辺 x 1列のウェル数）
+    static PaletteLayout parse(int N, String spec) {
+        int sep = spec.indexOf('x');
+        if (sep < 0) throw new IllegalArgumentException("Bad layout: " + spec);
+        return grid(N, Integer.parseInt(spec.substring(0, sep).trim()), Integer.parseInt(spec.substring(sep + 1).trim()));
+    }
+
+    // --- 仕切りを出力する（縦の仕切り N×(N-1) → 横の仕切り (N-1)×N）---
+    void writeWalls(OutputSink out) {
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N - 1; j++) out.wall(owner[i * N + j] != owner[i * N + j + 1], j == N - 2);
+        }
+        for (int i = 0; i < N - 1; i++) {
+            for (int j = 0; j < N; j++) out.wall(owner[i * N + j] != owner[(i + 1) * N + j], j == N - 1);
+        }
+    }
+
+    // --- 各ウェルにチューブ (番号 % K) を1gずつ注ぐ（出力と初期状態）---
+    WellGroups fill(OutputSink out, double[][] tubes, int K) {
+        WellGroups groups = new WellGroups(wellCount);
+        for (int w = 0; w < wellCount; w++) {
+            int k = w % K;
+            if (out != null) out.add(wellX[w], wellY[w], k);
+            groups.setColor(w, tubes[k]);
+            groups.grams[w] = 1.0;
+        }
+        return groups;
+    }
+
+    @Override
+    public String toString() {
+        return wellSize + "x" + perRow;
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * パレットシミュレータ（tools/src/lib.rs の State::apply / compute_score と同じ規則）
+ * マス単位の仕切りと連結成分（ウェル）は CellPalette に持たせ、切り替えた仕切りのまわりだけを更新する。
+ *  - wellOf(i, j)   : マス(i,j)のウェル番号（CellPalette の成分番号：lib.rs の走査順とは限らない）
+ *  - capacity / volume / color : ウェルの容量（マス数）・絵の具の量・色
+ *  - スコア = 1 + D × (V − 納品数) + round(1e4 × E)
+ * 不正な操作は IllegalStateException（メッセージは lib.rs と同じ）で通知する。
+ * 単体でも java PaletteSimulator <input> <output> で vis と同じ "Score = " を出力する
+ * （標準エラーには色差の合計 E と、その下界 HullProjection.errorBound も出す）。
+ */
+final class PaletteSimulator {
+
+    final ProblemInput input;
+    final int N;
+    final CellPalette palette;
+
+    int V;          // 注いだ回数
+    int delivered;  // 納品数
+    double E;       // 色差の合計
+    int ops;        // 適用した操作数
+
+    // wallV[i*(N-1) + j] : (i,j)-(i,j+1) 間, wallH[i*N + j] : (i,j)-(i+1,j) 間
+    PaletteSimulator(ProblemInput input, boolean[] wallV, boolean[] wallH) {
+        this.input = input;
+        this.N = input.N;
+        this.palette = new CellPalette(N, wallV, wallH);
+    }
+
+    // --- 操作 ---
+    void add(int i, int j, int k) {
+        ops++;
+        V++;
+        palette.pour(palette.componentOf(i, j), input.tubes, k);
+    }
+
+    // 納品した色差を返す
+    double deliver(int i, int j) {
+        ops++;
+        if (delivered >= input.H) throw new IllegalStateException("Cannot deliver more than H times");
+        int id = palette.componentOf(i, j);
+        double[] colors = palette.colors;
+        if (palette.vol[id] < 1.0 - 1e-6) {
+            throw new IllegalStateException(String.format("Cannot deliver: %.10f < 1 gram", palette.vol[id]));
+        }
+        double[] t = input.targets;
+        int h = delivered;
+        double dr = colors[id * 3] - t[h * 3];
+        double dg = colors[id * 3 + 1] - t[h * 3 + 1];
+        double db = colors[id * 3 + 2] - t[h * 3 + 2];
+        double err = Math.sqrt(dr * dr + dg * dg + db * db);
+        E += err;
+        palette.take(id);
+        delivered++;
+        return err;
+    }
+
+    void discard(int i, int j) {
+        ops++;
+        palette.take(palette.componentOf(i, j));
+    }
+
+    // 連結関係が変わらなければ lib.rs 同様に仕切り以外は何もしない（分割は容量比で按分、結合は重み付き平均）
+    void toggle(int i1, int j1, int i2, int j2) {
+        ops++;
+        if (Math.abs(i1 - i2) + Math.abs(j1 - j2) != 1) {
+            throw new IllegalStateException(String.format("(%d, %d) and (%d, %d) are not adjacent", i1, j1, i2, j2));
+        }
+        palette.toggle(i1, j1, i2, j2);
+    }
+
+    // --- 参照 ---
+    int wellCount() {
+        return palette.componentCount();
+    }
+
+    int wellOf(int i, int j) {
+        return palette.componentOf(i, j);
+    }
+
+    double volume(int i, int j) {
+        return palette.vol[wellOf(i, j)];
+    }
+
+    int capacity(int i, int j) {
+        return palette.cap[wellOf(i, j)];
+    }
+
+    double color(int i, int j, int d) {
+        return palette.colors[wellOf(i, j) * 3 + d];
+    }
+
+    // 納品数がHに満たなくても途中経過のスコアを返す
+    long score() {
+        return 1 + (long) input.D * (V - delivered) + Math.round(1e4 * E);
+    }
+
+    // --- 出力テキスト全体を検証・適用し、lib.rs の compute_score と同じ値を返す（不正なら0）---
+    static long computeScore(ProblemInput input, byte[] output) {
+        try {
+            PaletteSimulator sim = replay(input, output);
+            return sim.delivered < input.H ? 0 : sim.score();
+        } catch (IllegalStateException e) {
+            return 0;
+        }
+    }
+
+    // 納品ごとの通知（何番目の納品か・色差）
+    interface DeliveryListener {
+        void delivered(int index, double error);
+    }
+
+    // --- 出力を解釈して全操作を適用したシミュレータを返す（不正なら IllegalStateException）---
+    static PaletteSimulator replay(ProblemInput input, byte[] output) {
+        return replay(input, output, null);
+    }
+
+    // lib.rs と同じく、先に出力全体を読んで書式・隣接・操作数（T）を確かめてから適用する
+    // （長すぎてかつ途中で不正な出力でも、lib.rs と同じメッセージになる）
+    static PaletteSimulator replay(ProblemInput input, byte[] output, DeliveryListener listener) {
+        int N = input.N;
+        Tokens f = new Tokens(output);
+        boolean[] wv = new boolean[N * (N - 1)];
+        boolean[] wh = new boolean[(N - 1) * N];
+        for (int i = 0; i < wv.length; i++) wv[i] = f.next(0, 1) == 1;
+        for (int i = 0; i < wh.length; i++) wh[i] = f.next(0, 1) == 1;
+        // 操作 a は act[a*5] = 種類, act[a*5+1..4] = 引数
+        int[] act = new int[5 * 64];
+        int count = 0;
+        while (f.hasNext()) {
+            if (count * 5 == act.length) act = Arrays.copyOf(act, act.length * 2);
+            int base = count * 5;
+            int cmd = f.next(1, 4);
+            act[base] = cmd;
+            if (cmd == 1) {
+                act[base + 1] = f.next(0, N - 1);
+                act[base + 2] = f.next(0, N - 1);
+                act[base + 3] = f.next(0, input.K - 1);
+            } else if (cmd == 2 || cmd == 3) {
+                act[base + 1] = f.next(0, N - 1);
+                act[base + 2] = f.next(0, N - 1);
+            } else {
+                int i1 = f.next(0, N - 1), j1 = f.next(0, N - 1);
+                int i2 = f.next(0, N - 1), j2 = f.next(0, N - 1);
+                if (Math.abs(i1 - i2) + Math.abs(j1 - j2) != 1) {
+                    throw new IllegalStateException(String.format("(%d, %d) and (%d, %d) are not adjacent", i1, j1, i2, j2));
+                }
+                act[base + 1] = i1;
+                act[base + 2] = j1;
+                act[base + 3] = i2;
+                act[base + 4] = j2;
+            }
+            count++;
+            if (count > input.T) {
+                throw new IllegalStateException(String.format("Too many actions: %d > %d", count, input.T));
+            }
+        }
+        PaletteSimulator sim = new PaletteSimulator(input, wv, wh);
+        for (int a = 0; a < count; a++) {
+            int base = a * 5, cmd = act[base];
+            if (cmd == 1) {
+                sim.add(act[base + 1], act[base + 2], act[base + 3]);
+            } else if (cmd == 2) {
+                int h = sim.delivered;
+                double err = sim.deliver(act[base + 1], act[base + 2]);
+                if (listener != null) listener.delivered(h, err);
+            } else if (cmd == 3) {
+                sim.discard(act[base + 1], act[base + 2]);
+            } else {
+                sim.toggle(act[base + 1], act[base + 2], act[base + 3], act[base + 4]);
+            }
+        }
+        return sim;
+    }
+
+    // 出力テキストの整数トークン列（範囲外は lib.rs の read と同じく不正）
+    private static final class Tokens {
+        private final byte[] buf;
+        private int pos;
+
+        Tokens(byte[] buf) {
+            this.buf = buf;
+        }
+
+        boolean hasNext() {
+            while (pos < buf.length && buf[pos] <= ' ') pos++;
+            return pos < buf.length;
+        }
+
+        int next(int lo, int hi) {
+            if (!hasNext()) throw new IllegalStateException("Unexpected EOF");
+            int start = pos;
+            while (pos < buf.length && buf[pos] > ' ') pos++;
+            String tok = new String(buf, start, pos - start);
+            int v;
+            try {
+                v = Integer.parseInt(tok);
+            } catch (NumberFormatException e) {
+                throw new IllegalStateException("Parse error: " + tok);
+            }
+            if (v < lo || v > hi) throw new IllegalStateException("Out of range: " + tok);
+            return v;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java PaletteSimulator <input> <output>");
+            return;
+        }
+        ProblemInput input = ProblemInput.parse(Files.readAllBytes(Paths.get(args[0])));
+        byte[] output = Files.readAllBytes(Paths.get(args[1]));
+        try {
+            PaletteSimulator sim = replay(input, output);
+            if (sim.delivered < input.H) {
+                System.out.println("Not enough deliveries");
+                System.out.println("Score = 0");
+            } else {
+                System.out.println("Score = " + sim.score());
+            }
+            // 下界はレシピの丸めに依らないので、容量は1で作る
+            HullProjection hull = HullProjection.build(input.tubes, input.K, input.targets, input.H, 1);
+            System.err.printf("E=%.4f bound=%.4f%n", sim.E, hull.errorBound());
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+            System.out.println("Score = 0");
+        }
+    }
+}
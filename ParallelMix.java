@@ -0,0 +1,103 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * 混合候補の並列評価（Main / nextMain 共通）
+ * 混合・混合＋追加注ぎの候補はw1ごとに独立なので、w1の区間を ForkJoinPool で分割し、
+ * 区間ごとの最良候補を左から順に畳み込む。
+ *  - 各区間は逐次版と同じ順序で走査し、コストが真に小さいときだけ更新する
+ *  - 畳み込みでは右側の区間が真に小さいときだけ勝つ → 逐次版と同じ「最初の最小」が選ばれる
+ *  - 候補数が少ない・並列度が1のときは逐次に評価する（-Dmix.parallel=off で常に逐次、force で常に並列）
+ */
+final class ParallelMix {
+
+    static final long MIN_WORK = 4096;  // これ未満の候補数ならタスク分割の元が取れない
+    static final long LEAF_WORK = 1024; // 1タスクあたりの候補数の目安
+
+    private static final String MODE = System.getProperty("mix.parallel", "auto");
+
+    // --- 区間の最良候補（cost は評価開始時の上限で初期化する）---
+    abstract static class Best {
+        double cost;
+        boolean found;
+
+        void reset(double bound) {
+            cost = bound;
+            found = false;
+        }
+
+        // 畳み込みで負けた側の集計値（候補数など）を引き継ぐ
+        void absorb(Best other) {
+        }
+    }
+
+    // 区間[from, to)のw1を逐次版と同じ順序で評価し、intoを更新する
+    interface RangeEvaluator<B extends Best> {
+        void evaluate(int from, int to, B into);
+    }
+
+    private ParallelMix() {
+    }
+
+    // --- w1 ∈ [0, n) を評価し、最良候補を返す（逐次時は scratch をそのまま使う）---
+    static <B extends Best> B search(int n, long work, double bound, B scratch,
+                                     Supplier<B> factory, RangeEvaluator<B> ev) {
+        if (!shouldFork(work)) {
+            scratch.reset(bound);
+            ev.evaluate(0, n, scratch);
+            return scratch;
+        }
+        int grain = (int) Math.max(1, n * LEAF_WORK / work);
+        return ForkJoinPool.commonPool().invoke(new Task<>(0, n, grain, bound, factory, ev));
+    }
+
+    static boolean shouldFork(long work) {
+        if ("off".equals(MODE)) return false;
+        if ("force".equals(MODE)) return true;
+        return work >= MIN_WORK && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    // 左（先に走査される側）を優先し、右は真に小さいときだけ勝つ
+    private static <B extends Best> B pick(B left, B right) {
+        if (right.found && (!left.found || right.cost < left.cost)) {
+            right.absorb(left);
+            return right;
+        }
+        left.absorb(right);
+        return left;
+    }
+
+    private static final class Task<B extends Best> extends RecursiveTask<B> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to, grain;
+        private final double bound;
+        private final Supplier<B> factory;
+        private final RangeEvaluator<B> ev;
+
+        Task(int from, int to, int grain, double bound, Supplier<B> factory, RangeEvaluator<B> ev) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.bound = bound;
+            this.factory = factory;
+            this.ev = ev;
+        }
+
+        @Override
+        protected B compute() {
+            if (to - from <= grain) {
+                B b = factory.get();
+                b.reset(bound);
+                ev.evaluate(from, to, b);
+                return b;
+            }
+            int mid = (from + to) >>> 1;
+            Task<B> left = new Task<>(from, mid, grain, bound, factory, ev);
+            left.fork();
+            B right = new Task<>(mid, to, grain, bound, factory, ev).compute();
+            return pick(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * SolverParams の区分別チューナー（逐次半減法）
+ * InputGenerator のシードから区分（SolverParams.bucket）に合うケースを集め、候補の値の組を
+ * BatchRunner.runCase でワーカースレッドに分けて解く（プロセス起動なし）。
+ * 使い方: java ParamTuner [-buckets d1k1,d2k3,...] [-configs 候補数] [-cases 初回のケース数] [-rounds 段数]
+ *                        [-ms 1ケースの時間予算] [-threads 並列数] [-keys 名前,...] [-seed 乱数] [-scan シード上限]
+ *  - 動かすキーは -keys の指定、なければ解く経路が読むもの（SolverParams.BEAM_KEYS / GREEDY_KEYS）
+ *  - 候補0は現在の値（SolverParams.forCase）、残りはその近傍を対数正規で（確率1/4で範囲全体から一様に）振る
+ *  - 各段で全候補を同じケースで解き、候補0とのスコア比の平均が小さい上位半分を残してケース数を倍にする
+ *  - 最終段で候補0より良ければ、TUNED / -Dparams.file と同じ書式 "区分: 名前=値,..." を標準出力に書く
+ *  - ケースごとのスコアは保持するので、段が進んでも解き直すのは増えたケースの分だけ
+ */
+final class ParamTuner {
+
+    // 候補1つ：値と、ケースごとのスコア（未評価は -1）
+    private static final class Candidate {
+        final SolverParams params;
+        final long[] scores;
+
+        Candidate(SolverParams params, int cases) {
+            this.params = params;
+            this.scores = new long[cases];
+            Arrays.fill(scores, -1);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String buckets = "d1k1,d1k2,d1k3,d2k1,d2k2,d2k3,d3k1,d3k2,d3k3";
+        int configs = 16;
+        int cases = 4;
+        int rounds = 3;
+        long millis = 300;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String keys = null;
+        long seed = 1;
+        long scan = 100000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-buckets": buckets = args[++i]; break;
+                case "-configs": configs = Integer.parseInt(args[++i]); break;
+                case "-cases": cases = Integer.parseInt(args[++i]); break;
+                case "-rounds": rounds = Integer.parseInt(args[++i]); break;
+                case "-ms": millis = Long.parseLong(args[++i]); break;
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-keys": keys = args[++i]; break;
+                case "-seed": seed = Long.parseLong(args[++i]); break;
+                case "-scan": scan = Long.parseLong(args[++i]); break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        int[] tunable = tunableKeys(keys);
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for (String bucket : buckets.split(",")) {
+                int maxCases = cases << (rounds - 1);
+                List<byte[]> inputs = collectCases(bucket.trim(), maxCases, scan);
+                if (inputs.isEmpty()) {
+                    System.out.println("# " + bucket + ": no cases");
+                    continue;
+                }
+                String line = tune(pool, bucket.trim(), inputs, configs, cases, rounds, millis, tunable,
+                        new SplittableRandom(seed ^ bucket.hashCode()));
+                if (line != null) System.out.println(line);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // --- 1区分の探索：改善した値の行を返す（候補0が最良なら null）---
+    static String tune(ExecutorService pool, String bucket, List<byte[]> inputs, int configs, int cases,
+                       int rounds, long millis, int[] tunable, SplittableRandom rnd) throws Exception {
+        ProblemInput first = ProblemInput.parse(inputs.get(0));
+        SolverParams base = SolverParams.forCase(first.K, first.D);
+        List<Candidate> alive = new ArrayList<>();
+        alive.add(new Candidate(base, inputs.size()));
+        for (int c = 1; c < configs; c++) alive.add(new Candidate(perturb(base, tunable, rnd), inputs.size()));
+
+        int n = Math.min(cases, inputs.size());
+        double[] ratio = new double[0];
+        for (int round = 0; ; round++) {
+            evaluate(pool, alive, inputs, n, millis);
+            ratio = new double[alive.size()];
+            for (int c = 0; c < alive.size(); c++) ratio[c] = meanRatio(alive.get(c), alive.get(0), n);
+            System.out.printf("# %s round=%d cases=%d configs=%d best=%.4f%n",
+                    bucket, round, n, alive.size(), min(ratio));
+            if (round + 1 >= rounds || alive.size() <= 2 || n >= inputs.size()) break;
+
+            // 上位半分を残す（候補0は比較の基準なので常に残す）
+            Integer[] order = new Integer[alive.size()];
+            for (int c = 0; c < order.length; c++) order[c] = c;
+            final double[] r = ratio;
+            Arrays.sort(order, (a, b) -> Double.compare(r[a], r[b]));
+            List<Candidate> next = new ArrayList<>();
+            next.add(alive.get(0));
+            for (int i = 0; i < order.length && next.size() < (alive.size() + 1) / 2; i++) {
+                if (order[i] != 0) next.add(alive.get(order[i]));
+            }
+            alive = next;
+            n = Math.min(n * 2, inputs.size());
+        }
+
+        int best = 0;
+        for (int c = 1; c < alive.size(); c++) if (ratio[c] < ratio[best]) best = c;
+        if (best == 0) return null;
+        String diff = alive.get(best).params.diff();
+        System.out.printf("# %s improvement=%.2f%%%n", bucket, (1.0 - ratio[best]) * 100.0);
+        return diff.isEmpty() ? null : bucket + ": " + diff;
+    }
+
+    // 全候補の先頭n件のうち未評価のケースをまとめて解く
+    private static void evaluate(ExecutorService pool, List<Candidate> alive, List<byte[]> inputs, int n,
+                                 long millis) throws Exception {
+        List<Future<BatchRunner.Result>> futures = new ArrayList<>();
+        List<long[]> targets = new ArrayList<>();
+        List<Integer> index = new ArrayList<>();
+        for (Candidate cand : alive) {
+            for (int i = 0; i < n; i++) {
+                if (cand.scores[i] >= 0) continue;
+                byte[] in = inputs.get(i);
+                SolverParams p = cand.params;
+                futures.add(pool.submit(() -> BatchRunner.runCase("", in, millis, p)));
+                targets.add(cand.scores);
+                index.add(i);
+            }
+        }
+        for (int j = 0; j < futures.size(); j++) {
+            BatchRunner.Result res = futures.get(j).get();
+            // 不正な出力は大きな値として扱い、選ばれないようにする
+            targets.get(j)[index.get(j)] = res.error == null ? res.score : Long.MAX_VALUE / 4;
+        }
+    }
+
+    // 基準（候補0）とのスコア比の平均（小さいほど良い）
+    private static double meanRatio(Candidate c, Candidate base, int n) {
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) sum += (double) c.scores[i] / Math.max(1, base.scores[i]);
+        return sum / n;
+    }
+
+    private static double min(double[] a) {
+        double m = Double.POSITIVE_INFINITY;
+        for (double x : a) m = Math.min(m, x);
+        return m;
+    }
+
+    // --- 近傍の候補：各キーを確率1/2で動かす ---
+    static SolverParams perturb(SolverParams base, int[] tunable, SplittableRandom rnd) {
+        SolverParams p = base.copy();
+        boolean moved = false;
+        while (!moved) {
+            for (int i : tunable) {
+                if (rnd.nextInt(2) != 0) continue;
+                double lo = SolverParams.MIN[i], hi = SolverParams.MAX[i];
+                double x;
+                if (rnd.nextInt(4) == 0 || base.get(i) <= 0.0) {
+                    x = lo + (hi - lo) * rnd.nextDouble();
+                } else {
+                    x = base.get(i) * Math.exp(0.3 * gaussian(rnd));
+                }
+                p.set(i, round(Math.max(lo, Math.min(hi, x))));
+                moved = true;
+            }
+        }
+        return p;
+    }
+
+    // 出力を読みやすくするため有効数字4桁に丸める
+    private static double round(double x) {
+        if (x == 0.0) return 0.0;
+        double scale = Math.pow(10, 3 - (int) Math.floor(Math.log10(Math.abs(x))));
+        return Math.round(x * scale) / scale;
+    }
+
+    private static double gaussian(SplittableRandom rnd) {
+        double u = 1.0 - rnd.nextDouble(), v = rnd.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+
+    // 指定がなければ、解く経路（-Dbeam.width=0 なら貪欲法、それ以外はビームサーチ）が読むキーだけを動かす
+    private static int[] tunableKeys(String keys) {
+        String[] names = keys != null ? keys.split(",")
+                : "0".equals(System.getProperty("beam.width")) ? SolverParams.GREEDY_KEYS : SolverParams.BEAM_KEYS;
+        int[] idx = new int[names.length];
+        for (int i = 0; i < names.length; i++) idx[i] = SolverParams.index(names[i].trim());
+        return idx;
+    }
+
+    // --- シード0から順に生成し、区分に合うケースをmax件集める ---
+    static List<byte[]> collectCases(String bucket, int max, long scan) {
+        List<byte[]> inputs = new ArrayList<>();
+        for (long s = 0; s < scan && inputs.size() < max; s++) {
+            byte[] in = InputGenerator.generate(s, null, null, null);
+            ProblemInput input = ProblemInput.parse(in);
+            if (SolverParams.bucket(input.K, input.D).equals(bucket)) inputs.add(in);
+        }
+        return inputs;
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.SplittableRandom;
+
+/**
+ * 操作計画の焼きなまし（後処理）
+ * 貪欲法の計画（OpPlan）を初期解とし、締め切りまで1ターン分の操作を書き換える近傍で改善する（ビームの計画には使わない）。
+ *  - 近傍：追加注ぎ（廃棄＋追加注ぎを含む）のチューブ変更 / 納品・追加注ぎするグループの付け替え /
+ *          注ぎの挿入・削除（そのまま納品 ⇔ 追加注ぎ、混合 ⇔ 混合＋追加注ぎ）
+ *  - 評価は実スコアの差分：1e4 × 色差の変化 + D × 注いだ量の変化（操作数がTを超える・量が足りない・
+ *    容量を超える変更は棄却）。廃棄した分は注いだ量に含まれているので、別に課さない
+ *  - 各ターン開始時の状態を snapshots に持ち、変更したターンから再計算する。
+ *    変更の影響を受けたグループ（dirty）が元の計画と同じ状態に戻った時点で打ち切るので、
+ *    1回の評価は影響が及ぶ区間の長さで済む
+ * 混合・分割の位置（どのターンでどの仕切りを外す・戻すか）は変えない → グループ構造は元の計画と常に一致する。
+ */
+final class PlanAnnealer {
+
+    private static final double ERROR_SCALE = 1e4;
+    // 初期計画の再生（H+1 個の状態の複製）の時間：1ターン×1ウェルあたり（JIT 前の実測 110〜270ns に余裕を足した値）
+    static final long REPLAY_NANOS = 300;
+
+    private final OpPlan plan;
+    private final int H, K, D, capacity, wellCount, opBudget;
+    private final double startTemp, endTemp; // 温度（スコア単位）
+    private final double[] tubes, targets;
+    private final WellAdjacency adjacency;
+    private final MixtureLattice lattice;
+
+    private final WellGroups[] snapshots; // snapshots[t] : ターンtの操作前の状態
+    private final double[] error;         // ターンごとの色差
+    private final WellGroups work;
+    private final boolean[] dirty;
+    private final int[] touched = new int[4];
+    private int totalOps;
+    private boolean feasible;
+
+    long tried, accepted; // 計測用
+
+    PlanAnnealer(ProblemInput input, WellAdjacency adjacency, int capacity, MixtureLattice lattice,
+                 WellGroups initial, int opBudget, OpPlan plan, SolverParams params) {
+        this.plan = plan;
+        this.startTemp = params.annealStartTemp();
+        this.endTemp = params.annealEndTemp();
+        this.H = input.H;
+        this.K = input.K;
+        this.D = input.D;
+        this.tubes = input.tubes;
+        this.targets = input.targets;
+        this.capacity = capacity;
+        this.wellCount = initial.grams.length;
+        this.opBudget = opBudget;
+        this.adjacency = adjacency;
+        this.lattice = lattice;
+        snapshots = new WellGroups[H + 1];
+        for (int t = 0; t <= H; t++) snapshots[t] = new WellGroups(wellCount);
+        snapshots[0].copyFrom(initial);
+        error = new double[H];
+        work = new WellGroups(wellCount);
+        dirty = new boolean[wellCount];
+
+        // 初期計画を再生して各ターンの状態と色差を記録
+        feasible = true;
+        for (int t = 0; t < H && feasible; t++) {
+            work.copyFrom(snapshots[t]);
+            double e = apply(work, t, plan.type[t], plan.well[t], plan.arg[t], plan.aux[t]);
+            if (Double.isNaN(e)) {
+                feasible = false;
+                break;
+            }
+            error[t] = e;
+            snapshots[t + 1].copyFrom(work);
+            totalOps += plan.ops(t, plan.type[t], plan.arg[t], plan.aux[t]);
+        }
+    }
+
+    // --- 残り時間で再生と、それと同じだけの焼きなましができるか（できなければ作らない）---
+    static boolean affordable(TimeBudget budget, int H, int wellCount) {
+        return budget.remainingNanos() > 2 * REPLAY_NANOS * H * wellCount;
+    }
+
+    // 初期計画を最後まで再生できたか（できなければ anneal は何もしない）
+    boolean feasible() {
+        return feasible;
+    }
+
+    // --- 締め切りまで焼きなます（計画は plan に直接書き戻す）---
+    void anneal(TimeBudget budget, long seed) {
+        if (!feasible || H == 0) return;
+        SplittableRandom rnd = new SplittableRandom(seed);
+        long startNanos = budget.elapsedNanos();
+        long spanNanos = Math.max(1, budget.remainingNanos());
+        double temp = startTemp;
+        while (true) {
+            if ((tried & 63) == 0) {
+                long rem = budget.remainingNanos();
+                if (rem <= 0) break;
+                double progress = Math.min(1.0, (double) (budget.elapsedNanos() - startNanos) / spanNanos);
+                temp = startTemp * Math.pow(endTemp / startTemp, progress);
+            }
+            tried++;
+            step(rnd, temp);
+        }
+    }
+
+    // 1回の近傍：ターンtの操作を1つ書き換えて評価し、受理すれば確定する
+    private void step(SplittableRandom rnd, double temp) {
+        int t = rnd.nextInt(H);
+        int ty = plan.type[t], w = plan.well[t], a = plan.arg[t], x = plan.aux[t];
+        WellGroups before = snapshots[t];
+        int nt = ty, nw = w, na = a;
+        int move = rnd.nextInt(3);
+        if (move == 0) {
+            // チューブの変更
+            if ((ty != 1 && ty != 3 && ty != 6) || K < 2) return;
+            na = (a + 1 + rnd.nextInt(K - 1)) % K;
+        } else if (move == 1) {
+            // 納品・追加注ぎするグループの付け替え（空きグループへの注ぎは対象外）
+            if (ty != 0 && !(ty == 1 && before.grams[w] >= 1.0)) return;
+            int c = rnd.nextInt(wellCount);
+            int g = before.find(c);
+            if (g == before.find(w) || before.grams[g] < 1.0) return;
+            nw = ty == 0 ? c : g;
+        } else {
+            // 注ぎの挿入・削除
+            if (ty == 0) {
+                nt = 1;
+                nw = before.find(w);
+                na = rnd.nextInt(K);
+            } else if (ty == 1 && before.grams[w] >= 1.0) {
+                nt = 0;
+                na = -1;
+            } else if (ty == 2) {
+                nt = 3;
+                na = rnd.nextInt(K);
+            } else if (ty == 3) {
+                nt = 2;
+                na = -1;
+            } else {
+                return;
+            }
+        }
+        int opDelta = plan.ops(t, nt, na, x) - plan.ops(t, ty, a, x);
+        if (totalOps + opDelta > opBudget) return;
+        double delta = evaluate(t, nt, nw, na, x, false);
+        if (Double.isNaN(delta)) return;
+        if (delta <= 0 || rnd.nextDouble() < Math.exp(-delta / temp)) {
+            evaluate(t, nt, nw, na, x, true);
+            plan.set(t, nt, nw, na, x);
+            totalOps += opDelta;
+            accepted++;
+        }
+    }
+
+    // --- ターンtの操作を差し替えたときのスコア差（不可能ならNaN）---
+    // commit なら snapshots / error も更新する。元の計画と状態が一致した時点で打ち切る。
+    private double evaluate(int t, int nt, int nw, int na, int nx, boolean commit) {
+        work.copyFrom(snapshots[t]);
+        int dirtyCount = 0;
+        double deltaErr = 0.0;
+        int deltaPours = plan.pours(t, nt, na) - plan.pours(t);
+        int u = t;
+        for (; u < H; u++) {
+            boolean changed = u == t;
+            int ty = changed ? nt : plan.type[u];
+            int w = changed ? nw : plan.well[u];
+            int a = changed ? na : plan.arg[u];
+            int x = changed ? nx : plan.aux[u];
+            boolean merge = ty == 2 || ty == 3;
+            int r1 = merge ? work.find(w) : -1, r2 = merge ? work.find(adjacency.neighbors[w][x]) : -1;
+            int partner = -1; // 分割で独立するもう一方のウェル
+            if (ty == 7) {
+                int r = work.find(w);
+                partner = r == w ? work.next[w] : r;
+            }
+            double e = apply(work, u, ty, w, a, x);
+            if (Double.isNaN(e)) {
+                clearDirty();
+                return Double.NaN;
+            }
+            deltaErr += e - error[u];
+
+            // この操作で触れたグループ（差し替えたターンは元の操作が触れたグループも）
+            int n = 0;
+            touched[n++] = work.find(w);
+            if (changed) touched[n++] = snapshots[u + 1].find(plan.well[u]);
+            if (partner >= 0) touched[n++] = work.find(partner);
+            WellGroups orig = snapshots[u + 1];
+            for (int i = 0; i < n; i++) {
+                int g = touched[i];
+                boolean diff = !same(work, orig, g);
+                if (diff != dirty[g]) {
+                    dirty[g] = diff;
+                    dirtyCount += diff ? 1 : -1;
+                }
+            }
+            // 結合で代表でなくなったグループの印を外す
+            if (merge) {
+                if (!work.isRoot(r1) && dirty[r1]) {
+                    dirty[r1] = false;
+                    dirtyCount--;
+                }
+                if (!work.isRoot(r2) && dirty[r2]) {
+                    dirty[r2] = false;
+                    dirtyCount--;
+                }
+            }
+            if (commit) {
+                snapshots[u + 1].copyFrom(work);
+                error[u] = e;
+            }
+            if (dirtyCount == 0) break;
+        }
+        if (dirtyCount > 0) clearDirty();
+        return ERROR_SCALE * deltaErr + (double) D * deltaPours;
+    }
+
+    private void clearDirty() {
+        java.util.Arrays.fill(dirty, false);
+    }
+
+    // グループgの量と色が一致するか（量0なら色は問わない）
+    private static boolean same(WellGroups a, WellGroups b, int g) {
+        if (a.grams[g] != b.grams[g]) return false;
+        if (a.grams[g] == 0.0) return true;
+        return a.colors[g * 3] == b.colors[g * 3] && a.colors[g * 3 + 1] == b.colors[g * 3 + 1]
+                && a.colors[g * 3 + 2] == b.colors[g * 3 + 2];
+    }
+
+    // --- 操作を状態に適用し、納品した色差を返す（実行できなければNaN）---
+    // 量の条件は PaletteSimulator（lib.rs）と同じ：注ぐのは量によらず可（色を正しく追えるよう容量は超えない）、
+    // 納品は1g以上、廃棄は捨てる1gずつが残っていること。探索の条件より広いので、探索の計画は必ず再生できる
+    private double apply(WellGroups gs, int t, int type, int well, int arg, int aux) {
+        int g;
+        if (type == 0) {
+            g = gs.find(well);
+            if (gs.grams[g] < 1.0) return Double.NaN;
+        } else if (type == 1) {
+            g = gs.find(well);
+            double grams = gs.grams[g];
+            if (grams + 1.0 > capacity) return Double.NaN;
+            double total = grams + 1.0;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * grams + tubes[arg * 3 + d]) / total;
+            }
+            gs.grams[g] = total;
+        } else if (type == 7) {
+            int r = gs.find(well);
+            if (gs.opened[r] != aux || !gs.splittable(r)) return Double.NaN;
+            double half = gs.grams[r] * 0.5;
+            if (half < 1.0 || (arg >= 0 && half + 1.0 > capacity)) return Double.NaN;
+            gs.split(r);
+            g = well;
+            if (arg >= 0) {
+                for (int d = 0; d < 3; d++) gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * half + tubes[arg * 3 + d]) / (half + 1.0);
+                gs.grams[g] = half + 1.0;
+            }
+        } else if (type == 6) {
+            g = gs.find(well);
+            double grams = gs.grams[g] - aux;
+            if (aux < 1 || grams < -1e-9 || grams + 1.0 > capacity) return Double.NaN;
+            if (grams < 1e-9) grams = 0.0;
+            double total = grams + 1.0;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * grams + tubes[arg * 3 + d]) / total;
+            }
+            gs.grams[g] = total;
+        } else if (type == 5) {
+            g = gs.find(well);
+            double grams = gs.grams[g];
+            int n = lattice.grams[arg];
+            if (grams + n > capacity) return Double.NaN;
+            double total = grams + n;
+            for (int d = 0; d < 3; d++) {
+                gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * grams + lattice.colors[arg * 3 + d] * n) / total;
+            }
+            gs.grams[g] = total;
+        } else if (type == 4) {
+            g = gs.find(well);
+            if (gs.grams[g] >= 1e-8) return Double.NaN;
+            int n = lattice.grams[arg];
+            for (int d = 0; d < 3; d++) gs.colors[g * 3 + d] = lattice.colors[arg * 3 + d];
+            gs.grams[g] = n;
+        } else {
+            int g1 = gs.find(well), g2 = gs.find(adjacency.neighbors[well][aux]);
+            if (g1 == g2 || gs.grams[g1] < 1.0 || gs.grams[g2] < 1.0) return Double.NaN;
+            double total = gs.grams[g1] + gs.grams[g2] + (type == 3 ? 1.0 : 0.0);
+            if (total > capacity) return Double.NaN;
+            g = gs.union(g1, g2, well << 8 | aux);
+            if (type == 3) {
+                double grams = gs.grams[g];
+                for (int d = 0; d < 3; d++) {
+                    gs.colors[g * 3 + d] = (gs.colors[g * 3 + d] * grams + tubes[arg * 3 + d]) / (grams + 1.0);
+                }
+                gs.grams[g] = grams + 1.0;
+            }
+        }
+        double dr = gs.colors[g * 3] - targets[t * 3];
+        double dg = gs.colors[g * 3 + 1] - targets[t * 3 + 1];
+        double db = gs.colors[g * 3 + 2] - targets[t * 3 + 2];
+        gs.take(g);
+        return Math.sqrt(dr * dr + dg * dg + db * db);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * 焼きなましの再生チェック
+ * 分割と廃棄＋追加注ぎを含む小さな計画を手で組み、PlanAnnealer が初期計画を再生できること
+ * （feasible で、焼きなましが1回以上試行すること）と、焼きなまし後の出力が PaletteSimulator で
+ * 正しく採点できることを確かめる。1g未満の端数が残るウェルへの追加注ぎを再生できることと、
+ * 奇数グラムのグループが分割対象にならないことも確かめる。
+ * 使い方: java PlanAnnealerCheck（失敗すると AssertionError、成功すると OK を出力）
+ */
+final class PlanAnnealerCheck {
+
+    public static void main(String[] args) {
+        int N = 20, K = 4, H = 4, T = 200, D = 100;
+        double[] tubes = {
+                1.0, 0.0, 0.0,
+                0.0, 1.0, 0.0,
+                0.0, 0.0, 1.0,
+                1.0, 1.0, 1.0,
+        };
+        double[] targets = {
+                0.6, 0.3, 0.1,
+                0.6, 0.3, 0.1,
+                0.1, 0.3, 0.7,
+                0.0, 0.0, 0.9,
+        };
+        ProblemInput input = new ProblemInput(N, K, H, T, D, tubes, targets);
+        PaletteLayout layout = PaletteLayout.grid(N, 2, 10);
+        int capacity = layout.capacity;
+        MixtureLattice lattice = MixtureLattice.build(tubes, K, MixtureLattice.gramsWithin(K, capacity, 300000));
+        WellAdjacency adjacency = layout.adjacency;
+        int border = indexOf(adjacency.neighbors[0], 1); // ウェル0から見たウェル1の隣接番号
+
+        OutputSink out = new OutputSink(1 << 12);
+        layout.writeWalls(out);
+        WellGroups initial = layout.fill(out, input.tubeRows(), K); // ウェル w はチューブ w % K を1g
+
+        // 0: ウェル0,1を混合＋追加注ぎ（3g → 納品で2g） 1: 分割（1gずつ → ウェル0で納品）
+        // 2: ウェル1で1g捨ててから追加注ぎして納品 3: ウェル2をそのまま納品
+        OpPlan plan = new OpPlan(H, K, lattice);
+        plan.set(0, 3, 0, 0, border);
+        plan.set(1, 7, 0, -1, 0 << 8 | border);
+        plan.set(2, 6, 1, 2, 1);
+        plan.set(3, 0, 2, -1, -1);
+
+        SolverParams params = SolverParams.forCase(K, D);
+        PlanAnnealer annealer = new PlanAnnealer(input, adjacency, capacity, lattice, initial,
+                T - layout.wellCount, plan, params);
+        check(annealer.feasible(), "split followed by discard+add does not replay");
+        annealer.anneal(new TimeBudget(20), 1);
+        check(annealer.tried > 0, "annealer did not run");
+
+        plan.emit(out, layout.wellX, layout.wellY, adjacency);
+        PaletteSimulator sim = PaletteSimulator.replay(input, out.toByteArray());
+        check(sim.delivered == H, "delivered " + sim.delivered + " of " + H);
+
+        // 端数のあるウェル（1.5g）：1g捨てて残る 0.5g にも追加注ぎできる（lib.rs と同じ条件）
+        WellGroups fractional = new WellGroups(layout.wellCount);
+        fractional.copyFrom(initial);
+        fractional.grams[3] = 1.5;
+        OpPlan partial = new OpPlan(H, K, lattice);
+        partial.set(0, 6, 3, 0, 1);
+        partial.set(1, 1, 3, 0, -1);
+        partial.set(2, 0, 5, -1, -1);
+        partial.set(3, 0, 6, -1, -1);
+        check(new PlanAnnealer(input, adjacency, capacity, lattice, fractional,
+                T - layout.wellCount, partial, params).feasible(), "discard+add on 1.5g does not replay");
+
+        // 奇数グラムの結合グループは分割しない（0.5g の端数が残る）
+        WellGroups odd = new WellGroups(2);
+        odd.grams[0] = 1.0;
+        odd.grams[1] = 2.0;
+        odd.union(0, 1, 0);
+        check(!odd.splittable(odd.find(0)), "3g group is splittable");
+        odd.take(odd.find(0));
+        check(odd.splittable(odd.find(0)), "2g group is not splittable");
+        System.out.println("OK");
+    }
+
+    private static int indexOf(int[] a, int v) {
+        for (int i = 0; i < a.length; i++) if (a[i] == v) return i;
+        throw new AssertionError("not adjacent: " + v);
+    }
+
+    private static void check(boolean ok, String message) {
+        if (!ok) throw new AssertionError(message);
+    }
+}
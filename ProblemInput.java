@@ -0,0 +1,128 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 入力読み込み（Main / Main2 / nextMain 共通）
+ * 標準入力をバイト列のまま走査し、N K H T D とチューブ色・ターゲット色を
+ * 1パスでフラット配列（tubes[k*3 + d], targets[h*3 + d]）に格納する。
+ * 色は "0.xxxxx" 形式を固定小数点（整数部 + 小数部 / 10^桁数）で読む。
+ * 15桁以内なら Double.parseDouble と同じ値になる。
+ */
+final class ProblemInput {
+
+    final int N, K, H, T, D;
+    final double[] tubes;   // K×3
+    final double[] targets; // H×3
+
+    ProblemInput(int N, int K, int H, int T, int D, double[] tubes, double[] targets) {
+        this.N = N;
+        this.K = K;
+        this.H = H;
+        this.T = T;
+        this.D = D;
+        this.tubes = tubes;
+        this.targets = targets;
+    }
+
+    static ProblemInput read(InputStream in) {
+        try {
+            return parse(in.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static ProblemInput parse(byte[] buf) {
+        Cursor c = new Cursor(buf);
+        int N = c.nextInt();
+        int K = c.nextInt();
+        int H = c.nextInt();
+        int T = c.nextInt();
+        int D = c.nextInt();
+        double[] tubes = new double[K * 3];
+        for (int i = 0; i < tubes.length; i++) tubes[i] = c.nextDouble();
+        double[] targets = new double[H * 3];
+        for (int i = 0; i < targets.length; i++) targets[i] = c.nextDouble();
+        return new ProblemInput(N, K, H, T, D, tubes, targets);
+    }
+
+    // --- 既存コード向けの [n][3] 形式 ---
+    double[][] tubeRows() {
+        return rows(tubes, K);
+    }
+
+    double[][] targetRows() {
+        return rows(targets, H);
+    }
+
+    private static double[][] rows(double[] flat, int n) {
+        double[][] r = new double[n][3];
+        for (int i = 0; i < n; i++) {
+            r[i][0] = flat[i * 3];
+            r[i][1] = flat[i * 3 + 1];
+            r[i][2] = flat[i * 3 + 2];
+        }
+        return r;
+    }
+
+    // バイト列上の読み取り位置
+    private static final class Cursor {
+        private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+        };
+
+        private final byte[] buf;
+        private int pos;
+
+        Cursor(byte[] buf) {
+            this.buf = buf;
+        }
+
+        private void skipSpaces() {
+            while (pos < buf.length && buf[pos] <= ' ') pos++;
+            if (pos >= buf.length) throw new IllegalStateException("Unexpected EOF");
+        }
+
+        int nextInt() {
+            skipSpaces();
+            boolean neg = buf[pos] == '-';
+            if (neg) pos++;
+            int v = 0;
+            while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                v = v * 10 + (buf[pos++] - '0');
+            }
+            return neg ? -v : v;
+        }
+
+        double nextDouble() {
+            skipSpaces();
+            int start = pos;
+            boolean neg = buf[pos] == '-';
+            if (neg) pos++;
+            long mant = 0;
+            int digits = 0;
+            int scale = 0;
+            while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                mant = mant * 10 + (buf[pos++] - '0');
+                digits++;
+            }
+            if (pos < buf.length && buf[pos] == '.') {
+                pos++;
+                while (pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9') {
+                    mant = mant * 10 + (buf[pos++] - '0');
+                    digits++;
+                    scale++;
+                }
+            }
+            if (digits > 15 || (pos < buf.length && buf[pos] > ' ')) {
+                // 桁数超過・指数表記などは標準の変換に任せる
+                while (pos < buf.length && buf[pos] > ' ') pos++;
+                return Double.parseDouble(new String(buf, start, pos - start));
+            }
+            double v = mant / POW10[scale];
+            return neg ? -v : v;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+/**
+ * 1ケース分の計測値（System.err へのパレット表示の代わり）
+ * 探索中はプリミティブ配列に数えるだけで、文字列化は終了時の dump() で一度だけ行う。
+ *  - evaluated[op] : 操作種別ごとの評価した候補数
+ *  - chosen[op]    : 採用した操作の回数
+ *  - turnNanos[t]  : ターンごとの所要時間
+ *  - turnOp[t] / error[t] : ターンごとの採用操作と納品した色差
+ * -Dmetrics=json|csv で有効化（既定 off：記録メソッドは即座に戻る）、-Dmetrics.file で出力先を指定（既定 System.err）。
+ */
+final class SolverMetrics {
+
+    static final String[] OP_NAMES = {"direct", "add", "mix", "mixAdd", "recipe", "topUp", "discardAdd", "split"};
+
+    private static final SolverMetrics DISABLED = new SolverMetrics(null, 0);
+
+    final String format; // "json" / "csv"、無効なら null
+    final boolean enabled;
+    final long[] evaluated = new long[OP_NAMES.length];
+    final int[] chosen = new int[OP_NAMES.length];
+    final long[] turnNanos;
+    final int[] turnOp;
+    final double[] error;
+    private long turnStart;
+
+    private SolverMetrics(String format, int H) {
+        this.format = format;
+        this.enabled = format != null;
+        turnNanos = new long[H];
+        turnOp = new int[H];
+        error = new double[H];
+    }
+
+    static SolverMetrics disabled() {
+        return DISABLED;
+    }
+
+    static SolverMetrics fromConfig(int H) {
+        String mode = System.getProperty("metrics", "off");
+        if (mode.equals("json") || mode.equals("csv")) return new SolverMetrics(mode, H);
+        if (!mode.equals("off")) throw new IllegalArgumentException("Unknown metrics format: " + mode);
+        return DISABLED;
+    }
+
+    // --- 記録（無効時は何もしない）---
+    void evaluated(int op, long n) {
+        if (enabled) evaluated[op] += n;
+    }
+
+    void beginTurn() {
+        if (enabled) turnStart = System.nanoTime();
+    }
+
+    void endTurn(int t) {
+        if (enabled) turnNanos[t] = System.nanoTime() - turnStart;
+    }
+
+    void turnNanos(int t, long nanos) {
+        if (enabled) turnNanos[t] = nanos;
+    }
+
+    void chosen(int t, int op) {
+        if (!enabled) return;
+        chosen[op]++;
+        turnOp[t] = op;
+    }
+
+    void delivered(int t, double err) {
+        if (enabled) error[t] = err;
+    }
+
+    // --- 出力全体を再生して納品ごとの色差を記録（ビームサーチなど、確定後に誤差が分かる経路用）---
+    void deliveredFrom(ProblemInput input, OutputSink out) {
+        if (enabled) PaletteSimulator.replay(input, out.toByteArray(), this::delivered);
+    }
+
+    // --- 終了時に一度だけ書き出す ---
+    void dump() {
+        if (!enabled) return;
+        String file = System.getProperty("metrics.file");
+        if (file == null) {
+            dump(System.err);
+            return;
+        }
+        try (PrintStream ps = new PrintStream(new FileOutputStream(file))) {
+            dump(ps);
+        } catch (FileNotFoundException e) {
+            System.err.println("metrics: cannot open " + file);
+        }
+    }
+
+    void dump(PrintStream ps) {
+        StringBuilder sb = new StringBuilder(64 * turnNanos.length);
+        long totalNanos = 0;
+        double totalError = 0.0;
+        for (int t = 0; t < turnNanos.length; t++) {
+            totalNanos += turnNanos[t];
+            totalError += error[t];
+        }
+        if (format.equals("csv")) {
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                sb.append("# ").append(OP_NAMES[op]).append(" evaluated=").append(evaluated[op])
+                  .append(" chosen=").append(chosen[op]).append('\n');
+            }
+            sb.append("# totalNanos=").append(totalNanos).append(" totalError=").append(totalError).append('\n');
+            sb.append("turn,op,nanos,error\n");
+            for (int t = 0; t < turnNanos.length; t++) {
+                sb.append(t).append(',').append(OP_NAMES[turnOp[t]]).append(',')
+                  .append(turnNanos[t]).append(',').append(error[t]).append('\n');
+            }
+        } else {
+            sb.append("{\"evaluated\":{");
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                if (op > 0) sb.append(',');
+                sb.append('"').append(OP_NAMES[op]).append("\":").append(evaluated[op]);
+            }
+            sb.append("},\"chosen\":{");
+            for (int op = 0; op < OP_NAMES.length; op++) {
+                if (op > 0) sb.append(',');
+                sb.append('"').append(OP_NAMES[op]).append("\":").append(chosen[op]);
+            }
+            sb.append("},\"totalNanos\":").append(totalNanos);
+            sb.append(",\"totalError\":").append(totalError);
+            sb.append(",\"turnOp\":[");
+            for (int t = 0; t < turnOp.length; t++) sb.append(t > 0 ? "," : "").append(turnOp[t]);
+            sb.append("],\"turnNanos\":[");
+            for (int t = 0; t < turnNanos.length; t++) sb.append(t > 0 ? "," : "").append(turnNanos[t]);
+            sb.append("],\"error\":[");
+            for (int t = 0; t < error.length; t++) sb.append(t > 0 ? "," : "").append(error[t]);
+            sb.append("]}\n");
+        }
+        ps.print(sb);
+        ps.flush();
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 解法のパラメータ（従来コード中に直書きしていた定数）
+ * 値は 既定値 → D/K 区分ごとの調整済み値（TUNED）→ -Dparams.file → -Dparams の順に上書きする。
+ *  - 書式はどこでも "名前=値" をカンマか空白で区切ったもの（ファイルは1行1区分 "区分: 名前=値,..."）
+ *  - 区分は D（10^1〜10^2 / 〜10^3 / 〜10^4）× K（4〜8 / 9〜14 / 15〜20）の9通り（bucket()）
+ *  - ParamTuner が区分ごとに探索し、TUNED と同じ書式で出力する
+ * 解法ごとに1つのインスタンスを渡すので、並列実行中に別の値で解いても干渉しない。
+ */
+final class SolverParams {
+
+    // --- 名前・既定値・探索範囲（ParamTuner 用）---
+    static final String[] KEYS = {
+        "prevPenalty", "usedPenalty", "mergePenalty",
+        "opWeightUp", "opWeightDown", "opWeightMin", "opWeightMax", "opGoodError", "opBadError",
+        "tubeWeightUp", "tubeWeightDown", "tubeWeightMin", "tubeWeightMax", "tubeGoodError", "tubeBadError",
+        "nextPrevPenalty", "nextUsedPenalty", "nextLookaheadBonus",
+        "annealShare", "annealStartTemp", "annealEndTemp",
+        "opPrice",
+        "keptWaste",
+    };
+    private static final double[] DEFAULTS = {
+        1.0, 0.02, 0.02,
+        1.1, 0.95, 0.5, 2.0, 0.1, 0.3,
+        1.05, 0.98, 0.7, 1.5, 0.1, 0.3,
+        0.5, 0.01, 0.1,
+        0.0, 30.0, 1.0,
+        0.01,
+        0.5,
+    };
+    static final double[] MIN = {
+        0.0, 0.0, 0.0,
+        1.0, 0.8, 0.2, 1.0, 0.02, 0.1,
+        1.0, 0.9, 0.3, 1.0, 0.02, 0.1,
+        0.0, 0.0, 0.0,
+        0.0, 1.0, 0.1,
+        0.0,
+        0.0,
+    };
+    static final double[] MAX = {
+        3.0, 0.1, 0.1,
+        1.5, 1.0, 1.0, 4.0, 0.3, 0.6,
+        1.2, 1.0, 1.0, 3.0, 0.3, 0.6,
+        2.0, 0.05, 0.3,
+        0.5, 200.0, 10.0,
+        0.1,
+        1.0,
+    };
+
+    // 解法の経路ごとに実際に読むキー（ParamTuner の既定の探索対象）
+    // next* は nextMain だけが読み、焼きなましのキーは貪欲法で annealShare > 0 のときだけ効く
+    static final String[] BEAM_KEYS = {"prevPenalty", "usedPenalty", "mergePenalty", "opPrice", "keptWaste"};
+    static final String[] GREEDY_KEYS = {
+        "prevPenalty", "usedPenalty",
+        "opWeightUp", "opWeightDown", "opWeightMin", "opWeightMax", "opGoodError", "opBadError",
+        "tubeWeightUp", "tubeWeightDown", "tubeWeightMin", "tubeWeightMax", "tubeGoodError", "tubeBadError",
+        "annealShare", "annealStartTemp", "annealEndTemp",
+        "opPrice", "keptWaste",
+    };
+
+    // D/K 区分ごとの調整済み値（ParamTuner の出力を貼る。空なら既定値のまま）
+    // 別のシードの各区分8ケースで既定値と比べ、スコア比の平均が0.5%以上良かった区分だけを載せる
+    // （d1k1・d3k2 は同じ比較で0.2%未満＝測定の揺れの内、d1k3 は探索で既定値を超えなかった）
+    private static final String[] TUNED = {
+        "d1k2: prevPenalty=2.714,usedPenalty=0.01829,mergePenalty=0.01143,opPrice=0.007047,keptWaste=0.5219",
+        "d2k1: keptWaste=0.4648",
+        "d2k2: usedPenalty=0.01682,mergePenalty=0.01707,opPrice=0.01737",
+        "d2k3: prevPenalty=1.498,mergePenalty=0.01983,opPrice=0.009261,keptWaste=0.4201",
+        "d3k1: prevPenalty=1.732,usedPenalty=0.01754,keptWaste=0.3215",
+        "d3k3: usedPenalty=0.03005,mergePenalty=0.002729",
+    };
+
+    private final double[] v = DEFAULTS.clone();
+
+    // 貪欲法・ビームサーチ：直接納品のペナルティと混合の罰（色差単位）
+    double prevPenalty() { return v[0]; }
+    double usedPenalty() { return v[1]; }
+    double mergePenalty() { return v[2]; }
+    // 貪欲法：操作重み・チューブ重みの学習
+    double opWeightUp() { return v[3]; }
+    double opWeightDown() { return v[4]; }
+    double opWeightMin() { return v[5]; }
+    double opWeightMax() { return v[6]; }
+    double opGoodError() { return v[7]; }
+    double opBadError() { return v[8]; }
+    double tubeWeightUp() { return v[9]; }
+    double tubeWeightDown() { return v[10]; }
+    double tubeWeightMin() { return v[11]; }
+    double tubeWeightMax() { return v[12]; }
+    double tubeGoodError() { return v[13]; }
+    double tubeBadError() { return v[14]; }
+    // nextMain.calculateCost
+    double nextPrevPenalty() { return v[15]; }
+    double nextUsedPenalty() { return v[16]; }
+    double nextLookaheadBonus() { return v[17]; }
+    // 焼きなまし（貪欲法の計画だけにかける。annealShare は貪欲法の探索から取り上げる時間の割合で、0なら焼きなまさない）
+    double annealShare() { return v[18]; }
+    double annealStartTemp() { return v[19]; }
+    double annealEndTemp() { return v[20]; }
+    // 操作数の配分（OpScheduler）：余剰が足りなくなりそうなときの1操作の値段（色差単位）
+    double opPrice() { return v[21]; }
+    // 絵の具の収支（CostLedger）：注ぎ足し・レシピで手持ちに残す1gが廃棄になる見込み（D の何倍か）
+    double keptWaste() { return v[22]; }
+
+    SolverParams() {
+    }
+
+    SolverParams copy() {
+        SolverParams p = new SolverParams();
+        System.arraycopy(v, 0, p.v, 0, v.length);
+        return p;
+    }
+
+    static SolverParams defaults() {
+        return new SolverParams();
+    }
+
+    // --- ケース（K, D）用の値：既定値 → 調整済み → ファイル → システムプロパティ ---
+    static SolverParams forCase(int K, int D) {
+        SolverParams p = new SolverParams();
+        String bucket = bucket(K, D);
+        for (String line : TUNED) p.applyLine(line, bucket);
+        String file = System.getProperty("params.file");
+        if (file != null) {
+            try {
+                for (String line : Files.readAllLines(Paths.get(file))) p.applyLine(line, bucket);
+            } catch (IOException e) {
+                throw new java.io.UncheckedIOException(e);
+            }
+        }
+        String overrides = System.getProperty("params");
+        if (overrides != null) p.apply(overrides);
+        // 旧来の個別指定
+        String share = System.getProperty("anneal.share");
+        if (share != null) p.set("annealShare", Double.parseDouble(share));
+        return p;
+    }
+
+    // --- 区分名（"d2k1" など）---
+    static String bucket(int K, int D) {
+        int d = D < 100 ? 1 : D < 1000 ? 2 : 3;
+        int k = K <= 8 ? 1 : K <= 14 ? 2 : 3;
+        return "d" + d + "k" + k;
+    }
+
+    static int index(String key) {
+        for (int i = 0; i < KEYS.length; i++) {
+            if (KEYS[i].equals(key)) return i;
+        }
+        throw new IllegalArgumentException("Unknown parameter: " + key);
+    }
+
+    double get(String key) {
+        return v[index(key)];
+    }
+
+    double get(int i) {
+        return v[i];
+    }
+
+    void set(String key, double value) {
+        v[index(key)] = value;
+    }
+
+    void set(int i, double value) {
+        v[i] = value;
+    }
+
+    // "名前=値" の列を適用
+    void apply(String assignments) {
+        for (String item : assignments.split("[,\\s]+")) {
+            if (item.isEmpty()) continue;
+            int eq = item.indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Bad parameter: " + item);
+            set(item.substring(0, eq).trim(), Double.parseDouble(item.substring(eq + 1).trim()));
+        }
+    }
+
+    // "区分: 名前=値,..." の行を、区分が一致するとき（"*" は全区分）だけ適用
+    private void applyLine(String line, String bucket) {
+        String s = line.trim();
+        if (s.isEmpty() || s.startsWith("#")) return;
+        int colon = s.indexOf(':');
+        if (colon < 0) {
+            apply(s);
+            return;
+        }
+        String b = s.substring(0, colon).trim();
+        if (b.equals("*") || b.equals(bucket)) apply(s.substring(colon + 1));
+    }
+
+    // --- 既定値と異なる値だけを "名前=値,..." で返す ---
+    String diff() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < KEYS.length; i++) {
+            if (v[i] == DEFAULTS[i]) continue;
+            if (sb.length() > 0) sb.append(',');
+            sb.append(KEYS[i]).append('=').append(v[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < KEYS.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(KEYS[i]).append('=').append(v[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * 時間予算コントローラ
+ * 起動時刻からの経過を System.nanoTime で測り、残り時間と処理ペースから探索の努力量を決める材料を返す。
+ *  - 予算は第1引数（ミリ秒）か -Dtime.limit.ms で指定、既定は制限3秒に対し余裕を残した値
+ *  - lap()   : 前回のチェックポイントからの経過（1ターン分の実測に使う）
+ *  - slack() : 今のペースで残りを処理したときの予測時間に対する残り時間の比（1未満なら間に合わない）
+ *  - slice() : 残り時間の一部だけを使う子予算（探索と後処理で時間を分ける）
+ */
+final class TimeBudget {
+
+    static final long DEFAULT_LIMIT_MS = 2300; // JVM起動と出力の分を制限3秒から差し引いた値
+
+    private final long startNanos;
+    private final long limitNanos;
+    private long lapNanos;
+
+    TimeBudget(long limitMillis) {
+        this(System.nanoTime(), limitMillis * 1_000_000L);
+    }
+
+    private TimeBudget(long startNanos, long limitNanos) {
+        this.startNanos = startNanos;
+        this.limitNanos = limitNanos;
+        lapNanos = System.nanoTime();
+    }
+
+    static TimeBudget fromConfig(String[] args) {
+        long millis = Long.getLong("time.limit.ms", DEFAULT_LIMIT_MS);
+        if (args.length > 0) millis = Long.parseLong(args[0]);
+        return new TimeBudget(millis);
+    }
+
+    long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long remainingNanos() {
+        return limitNanos - elapsedNanos();
+    }
+
+    long remainingMillis() {
+        return Math.max(0L, remainingNanos() / 1_000_000L);
+    }
+
+    // --- 残り時間のうち fraction だけを使う予算（同じ起点で締め切りを早めたもの）---
+    TimeBudget slice(double fraction) {
+        long rem = Math.max(0L, remainingNanos());
+        return new TimeBudget(startNanos, limitNanos - rem + (long) (rem * Math.max(0.0, Math.min(1.0, fraction))));
+    }
+
+    boolean expired() {
+        return remainingNanos() <= 0;
+    }
+
+    // --- 前回のチェックポイントからの経過ナノ秒（チェックポイントを更新）---
+    long lap() {
+        long now = System.nanoTime();
+        long d = now - lapNanos;
+        lapNanos = now;
+        return d;
+    }
+
+    // --- 1単位unitNanosでunits個を処理するときの余裕（残り時間 / 予測時間）---
+    double slack(double unitNanos, int units) {
+        double need = unitNanos * units;
+        long rem = remainingNanos();
+        if (rem <= 0) return 0.0;
+        return need <= 0 ? Double.MAX_VALUE : rem / need;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * ウェル隣接テーブル
+ * レイアウト確定後に一度だけ構築し、毎ターンの隣接判定（4重ループ）を不要にする。
+ *  - neighbors[w] : ウェルwに隣接するウェル番号（昇順）
+ *  - borders[w]   : neighbors[w][n] との境界マス座標 {x1, y1, x2, y2} を4個ずつ並べたもの
+ * 境界マスは従来の走査順（w1のマス → w2のマス）で最初に見つかった組を採用する。
+ */
+final class WellAdjacency {
+
+    final int[][] neighbors;
+    final int[][] borders;
+
+    private WellAdjacency(int[][] neighbors, int[][] borders) {
+        this.neighbors = neighbors;
+        this.borders = borders;
+    }
+
+    // --- 正方形ウェル（左上wellX/wellY, 一辺wellSize）から隣接テーブルを構築 ---
+    static WellAdjacency build(int[] wellX, int[] wellY, int wellSize) {
+        int wellCount = wellX.length;
+        int[][] neighbors = new int[wellCount][];
+        int[][] borders = new int[wellCount][];
+        int[] nbBuf = new int[wellCount];
+        int[] bdBuf = new int[wellCount * 4];
+
+        for (int w1 = 0; w1 < wellCount; w1++) {
+            int cnt = 0;
+            for (int w2 = 0; w2 < wellCount; w2++) {
+                if (w1 == w2) continue;
+                // 外接矩形が1マス以上離れていれば隣接しない
+                int dx = gap(wellX[w1], wellX[w2], wellSize);
+                int dy = gap(wellY[w1], wellY[w2], wellSize);
+                if (dx + dy != 1) continue;
+
+                boolean found = false;
+                for (int i1 = 0; i1 < wellSize && !found; i1++) {
+                    for (int j1 = 0; j1 < wellSize && !found; j1++) {
+                        int x1 = wellX[w1] + i1;
+                        int y1 = wellY[w1] + j1;
+                        for (int i2 = 0; i2 < wellSize && !found; i2++) {
+                            for (int j2 = 0; j2 < wellSize && !found; j2++) {
+                                int x2 = wellX[w2] + i2;
+                                int y2 = wellY[w2] + j2;
+                                if (Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1) {
+                                    found = true;
+                                    nbBuf[cnt] = w2;
+                                    bdBuf[cnt * 4] = x1;
+                                    bdBuf[cnt * 4 + 1] = y1;
+                                    bdBuf[cnt * 4 + 2] = x2;
+                                    bdBuf[cnt * 4 + 3] = y2;
+                                    cnt++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            neighbors[w1] = java.util.Arrays.copyOf(nbBuf, cnt);
+            borders[w1] = java.util.Arrays.copyOf(bdBuf, cnt * 4);
+        }
+        return new WellAdjacency(neighbors, borders);
+    }
+
+    // 区間[a, a+size)と[b, b+size)の隙間（重なっていれば0）
+    private static int gap(int a, int b, int size) {
+        if (a + size <= b) return b - (a + size) + 1;
+        if (b + size <= a) return a - (b + size) + 1;
+        return 0;
+    }
+}
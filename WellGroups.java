@@ -0,0 +1,145 @@
+/**
+ * ウェルグループ管理（Union-Find）
+ * 仕切りを外して結合したウェル群を1つのグループとして扱い、
+ * 色とグラム数はグループ代表（root）にだけ持たせる。
+ *  - find   : 経路圧縮つきで代表ウェルを返す
+ *  - union  : サイズ併合で2グループを結合（絵の具は重み付き平均で混ぜる）
+ *  - next   : グループ内メンバーの循環リスト（メンバー走査用）
+ *  - version: 代表の色・量が変わるたびに増える版番号（CandidateCache の鍵）
+ *             grams を直接書き換えたときは take / touch で版を進める
+ *  - opened : 単独ウェル2つを結合したグループの代表に、外した仕切り（辺番号 m << 8 | n、
+ *             adjacency.borders[m][n]）を持つ。この2ウェルだけは split で仕切りを戻して分割できる
+ *             （半分ずつが整数グラムになる偶数量のときだけ：奇数だと 0.5g の端数が残り、どの操作でも使えなくなる）
+ * 全状態がプリミティブ配列なので copyFrom() で System.arraycopy による複写ができる。
+ */
+final class WellGroups {
+
+    final int[] parent;
+    final int[] size;
+    final int[] next;
+    final double[] colors; // colors[root*3 + d]
+    final double[] grams;  // grams[root]
+    final int[] version;
+    final int[] opened;
+
+    WellGroups(int wellCount) {
+        version = new int[wellCount];
+        opened = new int[wellCount];
+        java.util.Arrays.fill(opened, -1);
+        parent = new int[wellCount];
+        size = new int[wellCount];
+        next = new int[wellCount];
+        colors = new double[wellCount * 3];
+        grams = new double[wellCount];
+        for (int w = 0; w < wellCount; w++) {
+            parent[w] = w;
+            size[w] = 1;
+            next[w] = w;
+        }
+    }
+
+    // --- 別の状態を丸ごと複写（ビームサーチのスナップショット用）---
+    void copyFrom(WellGroups o) {
+        int n = parent.length;
+        System.arraycopy(o.parent, 0, parent, 0, n);
+        System.arraycopy(o.size, 0, size, 0, n);
+        System.arraycopy(o.next, 0, next, 0, n);
+        System.arraycopy(o.colors, 0, colors, 0, n * 3);
+        System.arraycopy(o.grams, 0, grams, 0, n);
+        System.arraycopy(o.version, 0, version, 0, n);
+        System.arraycopy(o.opened, 0, opened, 0, n);
+    }
+
+    int find(int w) {
+        int r = w;
+        while (parent[r] != r) r = parent[r];
+        while (parent[w] != r) {
+            int p = parent[w];
+            parent[w] = r;
+            w = p;
+        }
+        return r;
+    }
+
+    // --- 全ウェルの経路を圧縮（以降の find は union まで配列を書き換えない）---
+    void flatten() {
+        for (int w = 0; w < parent.length; w++) find(w);
+    }
+
+    boolean isRoot(int w) {
+        return parent[w] == w;
+    }
+
+    // --- 2グループを結合し、新しい代表を返す（絵の具は重み付き平均） ---
+    int union(int a, int b) {
+        return union(a, b, -1);
+    }
+
+    // edge : 外した仕切りの辺番号（単独ウェル同士の結合なら分割用に記録する）
+    int union(int a, int b, int edge) {
+        int ra = find(a), rb = find(b);
+        if (ra == rb) return ra;
+        int link = size[ra] == 1 && size[rb] == 1 ? edge : -1;
+        if (size[ra] < size[rb]) {
+            int tmp = ra; ra = rb; rb = tmp;
+        }
+        double total = grams[ra] + grams[rb];
+        for (int d = 0; d < 3; d++) {
+            colors[ra * 3 + d] = total > 0
+                    ? (colors[ra * 3 + d] * grams[ra] + colors[rb * 3 + d] * grams[rb]) / total
+                    : 0.0;
+        }
+        grams[ra] = total;
+        version[ra]++;
+        version[rb]++;
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        opened[ra] = link;
+        opened[rb] = -1;
+        // 循環リストの連結
+        int tmp = next[ra];
+        next[ra] = next[rb];
+        next[rb] = tmp;
+        return ra;
+    }
+
+    // --- 仕切りを戻して2ウェルのグループを分割し、もう一方の代表を返す（絵の具は面積比＝半分ずつ）---
+    int split(int root) {
+        int other = next[root];
+        double half = grams[root] * 0.5;
+        parent[other] = other;
+        size[root] = 1;
+        size[other] = 1;
+        next[root] = root;
+        next[other] = other;
+        grams[root] = half;
+        grams[other] = half;
+        for (int d = 0; d < 3; d++) colors[other * 3 + d] = colors[root * 3 + d];
+        opened[root] = -1;
+        version[root]++;
+        version[other]++;
+        return other;
+    }
+
+    boolean splittable(int root) {
+        return opened[root] >= 0 && grams[root] % 2.0 == 0.0;
+    }
+
+    void setColor(int root, double[] c) {
+        colors[root * 3] = c[0];
+        colors[root * 3 + 1] = c[1];
+        colors[root * 3 + 2] = c[2];
+        version[root]++;
+    }
+
+    void touch(int root) {
+        version[root]++;
+    }
+
+    // --- 1g取り出す（納品・廃棄） ---
+    void take(int root) {
+        grams[root] -= 1.0;
+        if (grams[root] < 1e-9) grams[root] = 0.0;
+        version[root]++;
+    }
+}
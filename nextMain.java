@@ -7,7 +7,6 @@
  * 4. 無駄な操作の削減
  * 5. メモリ効率の改善
  */
-import java.util.Scanner;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,30 +25,27 @@ public class nextMain {
     static double[] wellGrams;
     static int[] wellUsed;
     static int prevWell = -1;
+    static WellAdjacency adjacency; // 隣接テーブル（初期化時に構築）
+    static OutputSink out = new OutputSink(1 << 16); // 出力バッファ（終了時に一括出力）
+    static final Operation candidate = new Operation(); // 評価用スクラッチ（毎ターン再利用）
+    static boolean candidateFound;
+    static final MixBest mixScratch = new MixBest(); // 混合評価の逐次時に使い回す
+    static SolverParams params; // ペナルティ・先読みボーナスの係数
     
     public static void main(String[] args) {
-        Scanner sc = new Scanner(System.in);
-        N = sc.nextInt();
-        K = sc.nextInt();
-        H = sc.nextInt();
-        T = sc.nextInt();
-        D = sc.nextInt();
+        ProblemInput input = ProblemInput.read(System.in); // 標準入力を一括で読み込み
+        N = input.N;
+        K = input.K;
+        H = input.H;
+        T = input.T;
+        D = input.D;
+        params = SolverParams.forCase(K, D);
 
-        // 絵の具の色を読み込み
-        tubes = new double[K][3];
-        for (int i = 0; i < K; i++) {
-            tubes[i][0] = sc.nextDouble();
-            tubes[i][1] = sc.nextDouble();
-            tubes[i][2] = sc.nextDouble();
-        }
+        // 絵の具の色
+        tubes = input.tubeRows();
         
-        // ターゲット色を読み込み
-        targets = new double[H][3];
-        for (int i = 0; i < H; i++) {
-            targets[i][0] = sc.nextDouble();
-            targets[i][1] = sc.nextDouble();
-            targets[i][2] = sc.nextDouble();
-        }
+        // ターゲット色
+        targets = input.targetRows();
 
         // 動的ウェルサイズの決定
         optimizeWellSize();
@@ -68,7 +64,7 @@ public class nextMain {
             processSingleTarget(t);
         }
         
-        sc.close();
+        out.flush();
     }
     
     // 動的ウェルサイズの最適化
@@ -113,17 +109,13 @@ public class nextMain {
     static void outputWalls() {
         for (int i = 0; i < N; i++) {
             for (int j = 0; j < N - 1; j++) {
-                System.out.print(((j + 1) % wellSize == 0) ? "1" : "0");
-                if (j < N - 2) System.out.print(" ");
+                out.wall((j + 1) % wellSize == 0, j == N - 2);
             }
-            System.out.println();
         }
         for (int i = 0; i < N - 1; i++) {
             for (int j = 0; j < N; j++) {
-                System.out.print(((i + 1) % wellSize == 0) ? "1" : "0");
-                if (j < N - 1) System.out.print(" ");
+                out.wall((i + 1) % wellSize == 0, j == N - 1);
             }
-            System.out.println();
         }
     }
     
@@ -153,7 +145,7 @@ public class nextMain {
                 }
                 tubeUsage[bestTube]++;
                 
-                System.out.println("1 " + x + " " + y + " " + bestTube);
+                out.add(x, y, bestTube);
                 for (int d = 0; d < 3; d++) wellColors[idx][d] = tubes[bestTube][d];
                 wellX[idx] = x;
                 wellY[idx] = y;
@@ -161,6 +153,8 @@ public class nextMain {
                 idx++;
             }
         }
+        
+        adjacency = WellAdjacency.build(wellX, wellY, wellSize);
     }
     
     // 単一ターゲットの処理
@@ -170,197 +164,198 @@ public class nextMain {
         // 先読み：次のターゲットも考慮
         double[] nextTarget = (targetIndex + 1 < H) ? targets[targetIndex + 1] : null;
         
-        double minCost = Double.MAX_VALUE;
-        Operation bestOp = null;
-        
-        // 各操作パターンを評価
-        bestOp = evaluateOperations(target, nextTarget, minCost, bestOp);
+        // 各操作パターンを評価（勝者だけが candidate に書き込まれる）
+        candidateFound = false;
+        evaluateOperations(target, nextTarget);
         
         // 最適操作を実行
-        if (bestOp != null) {
-            executeOperation(bestOp);
+        if (candidateFound) {
+            executeOperation(candidate);
         } else {
             // フォールバック：最もシンプルな操作
             executeFallback(target);
         }
         
         // 統計更新
-        if (bestOp != null && bestOp.wellIndex >= 0) {
-            prevWell = bestOp.wellIndex;
-            wellUsed[bestOp.wellIndex]++;
+        if (candidateFound && candidate.wellIndex >= 0) {
+            prevWell = candidate.wellIndex;
+            wellUsed[candidate.wellIndex]++;
         }
     }
     
     // 操作の評価
-    static Operation evaluateOperations(double[] target, double[] nextTarget, double minCost, Operation bestOp) {
+    // 各評価は独自の最小コストから始め、候補があればそれまでの最良を上書きする（従来通り）
+    static void evaluateOperations(double[] target, double[] nextTarget) {
         // 1. そのまま納品
-        bestOp = evaluateDirectDelivery(target, nextTarget, minCost, bestOp);
+        evaluateDirectDelivery(target, nextTarget);
         
         // 2. 追加注ぎ
-        bestOp = evaluateAddPaint(target, nextTarget, minCost, bestOp);
+        evaluateAddPaint(target, nextTarget);
         
         // 3. 混合系操作
-        bestOp = evaluateMixing(target, nextTarget, minCost, bestOp);
-        
-        return bestOp;
+        evaluateMixing(target, nextTarget);
     }
     
     // そのまま納品の評価
-    static Operation evaluateDirectDelivery(double[] target, double[] nextTarget, double minCost, Operation bestOp) {
+    static void evaluateDirectDelivery(double[] target, double[] nextTarget) {
+        double minCost = Double.MAX_VALUE;
         for (int w = 0; w < wellCount; w++) {
             if (wellGrams[w] < 1.0 - 1e-6) continue;
             
-            double cost = calculateCost(wellColors[w], target, w, nextTarget);
+            double[] c = wellColors[w];
+            double cost = calculateCost(c[0], c[1], c[2], target, w, nextTarget);
             if (cost < minCost) {
                 minCost = cost;
-                bestOp = new Operation(0, w, -1, -1, -1, -1, -1, -1, -1, wellColors[w].clone());
+                candidate.set(0, w, -1, -1, -1, -1, -1, -1, c[0], c[1], c[2]);
+                candidateFound = true;
             }
         }
-        return bestOp;
     }
     
     // 追加注ぎの評価
-    static Operation evaluateAddPaint(double[] target, double[] nextTarget, double minCost, Operation bestOp) {
+    static void evaluateAddPaint(double[] target, double[] nextTarget) {
+        double minCost = Double.MAX_VALUE;
         for (int w = 0; w < wellCount; w++) {
             if (wellGrams[w] < 1.0 - 1e-6 || wellGrams[w] + 1.0 > wellSize * wellSize) continue;
             
+            double total = wellGrams[w] + 1.0;
+            double[] c = wellColors[w];
+            double sr = c[0] * wellGrams[w], sg = c[1] * wellGrams[w], sb = c[2] * wellGrams[w];
             for (int k = 0; k < K; k++) {
-                double total = wellGrams[w] + 1.0;
-                double[] newColor = new double[3];
-                for (int d = 0; d < 3; d++) {
-                    newColor[d] = (wellColors[w][d] * wellGrams[w] + tubes[k][d]) / total;
-                }
+                double r = (sr + tubes[k][0]) / total;
+                double g = (sg + tubes[k][1]) / total;
+                double b = (sb + tubes[k][2]) / total;
+                if (!mayBeat(r, g, b, target, minCost)) continue;
                 
-                double cost = calculateCost(newColor, target, w, nextTarget);
+                double cost = calculateCost(r, g, b, target, w, nextTarget);
                 if (cost < minCost) {
                     minCost = cost;
-                    bestOp = new Operation(1, w, k, -1, -1, -1, -1, -1, -1, newColor);
+                    candidate.set(1, w, k, -1, -1, -1, -1, -1, r, g, b);
+                    candidateFound = true;
                 }
             }
         }
-        return bestOp;
     }
     
-    // 混合系操作の評価
-    static Operation evaluateMixing(double[] target, double[] nextTarget, double minCost, Operation bestOp) {
-        for (int w1 = 0; w1 < wellCount; w1++) {
+    // 混合系操作の評価（w1の区間ごとに独立なので、候補が多いときは分割して並列評価する）
+    static void evaluateMixing(double[] target, double[] nextTarget) {
+        MixBest best = ParallelMix.search(wellCount, (long) wellCount * 4 * (K + 1), Double.MAX_VALUE, mixScratch,
+                MixBest::new, (from, to, b) -> evaluateMixing(from, to, b, target, nextTarget));
+        if (best.found) {
+            candidate.copyFrom(best.op);
+            candidateFound = true;
+        }
+    }
+    
+    // w1 ∈ [from, to) の混合・混合＋追加注ぎを評価し、区間の最良を best に残す
+    static void evaluateMixing(int from, int to, MixBest best, double[] target, double[] nextTarget) {
+        for (int w1 = from; w1 < to; w1++) {
             if (wellGrams[w1] < 1.0 - 1e-6) continue;
             
-            for (int w2 = 0; w2 < wellCount; w2++) {
-                if (w1 == w2 || wellGrams[w2] < 1.0 - 1e-6) continue;
+            int[] nb = adjacency.neighbors[w1];
+            int[] bd = adjacency.borders[w1];
+            for (int n = 0; n < nb.length; n++) {
+                int w2 = nb[n];
+                if (wellGrams[w2] < 1.0 - 1e-6) continue;
                 
                 double total = wellGrams[w1] + wellGrams[w2];
                 if (total > wellSize * wellSize) continue;
                 
-                // 隣接チェック
-                int[] coords = findAdjacentCoords(w1, w2);
-                if (coords == null) continue;
+                int c = n * 4; // 境界マス座標の先頭
                 
                 // 混合色の計算
-                double[] mixColor = new double[3];
-                for (int d = 0; d < 3; d++) {
-                    mixColor[d] = (wellColors[w1][d] * wellGrams[w1] + wellColors[w2][d] * wellGrams[w2]) / total;
-                }
+                double[] c1 = wellColors[w1], c2 = wellColors[w2];
+                double mr = (c1[0] * wellGrams[w1] + c2[0] * wellGrams[w2]) / total;
+                double mg = (c1[1] * wellGrams[w1] + c2[1] * wellGrams[w2]) / total;
+                double mb = (c1[2] * wellGrams[w1] + c2[2] * wellGrams[w2]) / total;
                 
                 // そのまま混合
-                double cost = calculateCost(mixColor, target, w1, nextTarget);
-                if (cost < minCost) {
-                    minCost = cost;
-                    bestOp = new Operation(2, w1, -1, w2, coords[0], coords[1], coords[2], coords[3], -1, mixColor);
+                if (mayBeat(mr, mg, mb, target, best.cost)) {
+                    double cost = calculateCost(mr, mg, mb, target, w1, nextTarget);
+                    if (cost < best.cost) {
+                        best.cost = cost;
+                        best.op.set(2, w1, -1, w2, bd[c], bd[c + 1], bd[c + 2], bd[c + 3], mr, mg, mb);
+                        best.found = true;
+                    }
                 }
                 
                 // 混合＋追加注ぎ
+                if (total + 1.0 > wellSize * wellSize) continue;
                 for (int k = 0; k < K; k++) {
-                    if (total + 1.0 > wellSize * wellSize) continue;
+                    double r = (mr * total + tubes[k][0]) / (total + 1.0);
+                    double g = (mg * total + tubes[k][1]) / (total + 1.0);
+                    double b = (mb * total + tubes[k][2]) / (total + 1.0);
+                    if (!mayBeat(r, g, b, target, best.cost)) continue;
                     
-                    double[] finalColor = new double[3];
-                    for (int d = 0; d < 3; d++) {
-                        finalColor[d] = (mixColor[d] * total + tubes[k][d]) / (total + 1.0);
-                    }
-                    
-                    cost = calculateCost(finalColor, target, w1, nextTarget);
-                    if (cost < minCost) {
-                        minCost = cost;
-                        bestOp = new Operation(3, w1, k, w2, coords[0], coords[1], coords[2], coords[3], -1, finalColor);
+                    double cost = calculateCost(r, g, b, target, w1, nextTarget);
+                    if (cost < best.cost) {
+                        best.cost = cost;
+                        best.op.set(3, w1, k, w2, bd[c], bd[c + 1], bd[c + 2], bd[c + 3], r, g, b);
+                        best.found = true;
                     }
                 }
             }
         }
-        return bestOp;
+    }
+    
+    // 枝刈り：コストは (距離 - 先読みボーナスの上限 nextLookaheadBonus) 以上なので、二乗距離だけで勝てない候補を除外
+    static boolean mayBeat(double r, double g, double b, double[] target, double minCost) {
+        double bound = minCost + params.nextLookaheadBonus();
+        return sqDist(r, g, b, target) < bound * bound;
     }
     
     // コスト計算（先読み機能付き）
-    static double calculateCost(double[] color, double[] target, int wellIndex, double[] nextTarget) {
-        double baseCost = colorDist(color, target);
+    static double calculateCost(double r, double g, double b, double[] target, int wellIndex, double[] nextTarget) {
+        double baseCost = Math.sqrt(sqDist(r, g, b, target));
         
         // ペナルティ
         double penalty = 0.0;
-        if (wellIndex == prevWell) penalty += 0.5; // 前回と同じウェル
-        penalty += 0.01 * wellUsed[wellIndex]; // 使用回数
+        if (wellIndex == prevWell) penalty += params.nextPrevPenalty(); // 前回と同じウェル
+        penalty += params.nextUsedPenalty() * wellUsed[wellIndex]; // 使用回数
         
         // 先読みボーナス（次のターゲットにも近い場合）
         double futureBonus = 0.0;
         if (nextTarget != null) {
-            double nextDist = colorDist(color, nextTarget);
-            futureBonus = Math.max(0, 0.1 - nextDist); // 次に近いほどボーナス
+            double nextDist = Math.sqrt(sqDist(r, g, b, nextTarget));
+            futureBonus = Math.max(0, params.nextLookaheadBonus() - nextDist); // 次に近いほどボーナス
         }
         
         return baseCost + penalty - futureBonus;
     }
     
-    // 隣接座標の検索
-    static int[] findAdjacentCoords(int w1, int w2) {
-        for (int i1 = 0; i1 < wellSize; i1++) {
-            for (int j1 = 0; j1 < wellSize; j1++) {
-                int x1 = wellX[w1] + i1;
-                int y1 = wellY[w1] + j1;
-                for (int i2 = 0; i2 < wellSize; i2++) {
-                    for (int j2 = 0; j2 < wellSize; j2++) {
-                        int x2 = wellX[w2] + i2;
-                        int y2 = wellY[w2] + j2;
-                        if (Math.abs(x1 - x2) + Math.abs(y1 - y2) == 1) {
-                            return new int[]{x1, y1, x2, y2};
-                        }
-                    }
-                }
-            }
-        }
-        return null;
-    }
-    
     // 操作の実行
     static void executeOperation(Operation op) {
         switch (op.type) {
             case 0: // そのまま納品
-                System.out.println("2 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex]);
+                out.deliver(wellX[op.wellIndex], wellY[op.wellIndex]);
                 wellGrams[op.wellIndex] -= 1.0;
                 break;
                 
             case 1: // 追加注ぎ
-                System.out.println("1 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex] + " " + op.tubeIndex);
+                out.add(wellX[op.wellIndex], wellY[op.wellIndex], op.tubeIndex);
                 for (int d = 0; d < 3; d++) wellColors[op.wellIndex][d] = op.resultColor[d];
                 wellGrams[op.wellIndex] += 1.0;
-                System.out.println("2 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex]);
+                out.deliver(wellX[op.wellIndex], wellY[op.wellIndex]);
                 wellGrams[op.wellIndex] -= 1.0;
                 break;
                 
             case 2: // 混合
-                System.out.println("4 " + op.x1 + " " + op.y1 + " " + op.x2 + " " + op.y2);
+                out.toggle(op.x1, op.y1, op.x2, op.y2);
                 for (int d = 0; d < 3; d++) wellColors[op.wellIndex][d] = op.resultColor[d];
                 wellGrams[op.wellIndex] += wellGrams[op.well2Index];
                 wellGrams[op.well2Index] = 0.0;
-                System.out.println("2 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex]);
+                out.deliver(wellX[op.wellIndex], wellY[op.wellIndex]);
                 wellGrams[op.wellIndex] -= 1.0;
                 break;
                 
             case 3: // 混合＋追加注ぎ
-                System.out.println("4 " + op.x1 + " " + op.y1 + " " + op.x2 + " " + op.y2);
+                out.toggle(op.x1, op.y1, op.x2, op.y2);
                 wellGrams[op.wellIndex] += wellGrams[op.well2Index];
                 wellGrams[op.well2Index] = 0.0;
-                System.out.println("1 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex] + " " + op.tubeIndex);
+                out.add(wellX[op.wellIndex], wellY[op.wellIndex], op.tubeIndex);
                 for (int d = 0; d < 3; d++) wellColors[op.wellIndex][d] = op.resultColor[d];
                 wellGrams[op.wellIndex] += 1.0;
-                System.out.println("2 " + wellX[op.wellIndex] + " " + wellY[op.wellIndex]);
+                out.deliver(wellX[op.wellIndex], wellY[op.wellIndex]);
                 wellGrams[op.wellIndex] -= 1.0;
                 break;
         }
@@ -382,10 +377,10 @@ public class nextMain {
         // 空きウェルを探す
         for (int w = 0; w < wellCount; w++) {
             if (wellGrams[w] < 1e-8) {
-                System.out.println("1 " + wellX[w] + " " + wellY[w] + " " + bestTube);
+                out.add(wellX[w], wellY[w], bestTube);
                 for (int d = 0; d < 3; d++) wellColors[w][d] = tubes[bestTube][d];
                 wellGrams[w] = 1.0;
-                System.out.println("2 " + wellX[w] + " " + wellY[w]);
+                out.deliver(wellX[w], wellY[w]);
                 wellGrams[w] = 0.0;
                 prevWell = w;
                 wellUsed[w]++;
@@ -394,6 +389,14 @@ public class nextMain {
         }
     }
     
+    // 二乗色差（比較用）
+    static double sqDist(double r, double g, double b, double[] c) {
+        double dr = r - c[0];
+        double dg = g - c[1];
+        double db = b - c[2];
+        return dr * dr + dg * dg + db * db;
+    }
+    
     // 色差計算
     static double colorDist(double[] c1, double[] c2) {
         double dr = c1[0] - c2[0];
@@ -402,16 +405,15 @@ public class nextMain {
         return Math.sqrt(dr * dr + dg * dg + db * db);
     }
     
-    // 操作クラス
+    // 操作クラス（評価中は使い回し、勝者の内容だけを保持する）
     static class Operation {
         int type; // 0:直接, 1:追加注ぎ, 2:混合, 3:混合+追加注ぎ
         int wellIndex, tubeIndex, well2Index;
         int x1, y1, x2, y2;
-        int additionalParam;
-        double[] resultColor;
+        final double[] resultColor = new double[3];
         
-        Operation(int type, int wellIndex, int tubeIndex, int well2Index, 
-                 int x1, int y1, int x2, int y2, int additionalParam, double[] resultColor) {
+        void set(int type, int wellIndex, int tubeIndex, int well2Index,
+                 int x1, int y1, int x2, int y2, double r, double g, double b) {
             this.type = type;
             this.wellIndex = wellIndex;
             this.tubeIndex = tubeIndex;
@@ -420,8 +422,19 @@ public class nextMain {
             this.y1 = y1;
             this.x2 = x2;
             this.y2 = y2;
-            this.additionalParam = additionalParam;
-            this.resultColor = resultColor;
+            resultColor[0] = r;
+            resultColor[1] = g;
+            resultColor[2] = b;
         }
+        
+        void copyFrom(Operation o) {
+            set(o.type, o.wellIndex, o.tubeIndex, o.well2Index, o.x1, o.y1, o.x2, o.y2,
+                    o.resultColor[0], o.resultColor[1], o.resultColor[2]);
+        }
+    }
+    
+    // 混合候補の区間ごとの最良
+    static final class MixBest extends ParallelMix.Best {
+        final Operation op = new Operation();
     }
 }
\ No newline at end of file